@@ -0,0 +1,72 @@
+package ch.supertomcat.supertomcatutils.queue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Queue Manager for benchmarks. Tasks are strings in the format "key/number" and the restriction key of a task is the part before the slash. Tasks do
+ * nothing or sleep for the given time.
+ */
+public class BenchmarkQueueManager extends QueueManagerBase<String, Void> {
+	/**
+	 * Latch, which is counted down for every completed task
+	 */
+	private volatile CountDownLatch completedLatch = new CountDownLatch(0);
+
+	/**
+	 * Constructor
+	 * 
+	 * @param maxConnectionCount Max Connection Count
+	 * @param maxConnectionCountPerHost Max Connection Count per Host
+	 * @param sleepMicros Time in microseconds every task sleeps or 0 if tasks do nothing
+	 */
+	public BenchmarkQueueManager(int maxConnectionCount, int maxConnectionCountPerHost, long sleepMicros) {
+		super(task -> new QueueTaskBase<>(task) {
+			@Override
+			public Void call() throws Exception {
+				if (sleepMicros > 0) {
+					Thread.sleep(TimeUnit.MICROSECONDS.toMillis(sleepMicros), (int)(TimeUnit.MICROSECONDS.toNanos(sleepMicros) % 1000000));
+				}
+				return null;
+			}
+		}, maxConnectionCount, maxConnectionCountPerHost);
+		// Snapshots are not part of the measured scheduler path
+		setStateSnapshotInterval(Long.MAX_VALUE);
+	}
+
+	/**
+	 * Expect the given count of completed tasks
+	 * 
+	 * @param taskCount Task Count
+	 */
+	public void expectCompletedTasks(int taskCount) {
+		completedLatch = new CountDownLatch(taskCount);
+	}
+
+	/**
+	 * Wait until the expected count of tasks completed
+	 * 
+	 * @throws InterruptedException
+	 */
+	public void awaitCompletedTasks() throws InterruptedException {
+		if (!completedLatch.await(5, TimeUnit.MINUTES)) {
+			throw new IllegalStateException("Tasks did not complete in time, remaining: " + completedLatch.getCount());
+		}
+	}
+
+	@Override
+	protected void removedTaskFromQueue(String task, boolean executeFailure) {
+		// Nothing to do
+	}
+
+	@Override
+	protected void completedTaskCallable(QueueTask<String, Void> task) {
+		completedLatch.countDown();
+	}
+
+	@Override
+	protected Restriction getRestrictionForTask(String task) {
+		return new RestrictionBase(task.substring(0, task.indexOf('/')), 0) {
+		};
+	}
+}
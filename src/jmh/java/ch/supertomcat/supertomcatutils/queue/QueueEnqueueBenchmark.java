@@ -0,0 +1,94 @@
+package ch.supertomcat.supertomcatutils.queue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmark for adding tasks to the queue. The queue is not running, so only the cost of adding the tasks is measured.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(value = 1, jvmArgs = { "-Xmx4g" })
+public class QueueEnqueueBenchmark {
+	/**
+	 * Count of tasks
+	 */
+	@Param({ "10000", "100000", "1000000" })
+	public int taskCount;
+
+	/**
+	 * Count of restriction keys
+	 */
+	@Param({ "1", "500" })
+	public int restrictionKeyCount;
+
+	/**
+	 * Tasks
+	 */
+	private List<String> tasks;
+
+	/**
+	 * Queue Manager
+	 */
+	private BenchmarkQueueManager manager;
+
+	/**
+	 * Create tasks
+	 */
+	@Setup(Level.Trial)
+	public void createTasks() {
+		tasks = new ArrayList<>(taskCount);
+		for (int i = 0; i < taskCount; i++) {
+			tasks.add("host" + (i % restrictionKeyCount) + "/" + i);
+		}
+	}
+
+	/**
+	 * Create empty queue
+	 */
+	@Setup(Level.Invocation)
+	public void createManager() {
+		manager = new BenchmarkQueueManager(10, 2, 0);
+	}
+
+	/**
+	 * Add all tasks at once
+	 * 
+	 * @return Queue Manager
+	 */
+	@Benchmark
+	public BenchmarkQueueManager addTasksToQueue() {
+		manager.addTasksToQueue(tasks);
+		return manager;
+	}
+
+	/**
+	 * Add tasks one by one
+	 * 
+	 * @return Queue Manager
+	 */
+	@Benchmark
+	public BenchmarkQueueManager addTaskToQueue() {
+		for (String task : tasks) {
+			manager.addTaskToQueue(task);
+		}
+		return manager;
+	}
+}
@@ -0,0 +1,126 @@
+package ch.supertomcat.supertomcatutils.queue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmark for executing tasks from the queue.
+ * 
+ * With tasks, which do nothing, the time per task is the overhead of the scheduler, mostly the time from the completion of a task to the start of the next
+ * task. With 1 restriction key only the maximum connection count per host is used, with 500 restriction keys the maximum connection count is used.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class QueueSchedulingBenchmark {
+	/**
+	 * Count of tasks per invocation of {@link #drainQueue()}
+	 */
+	private static final int TASK_COUNT = 1000;
+
+	/**
+	 * Count of restriction keys
+	 */
+	@Param({ "1", "500" })
+	public int restrictionKeyCount;
+
+	/**
+	 * True if event driven scheduling is used, false if the scheduler and completion threads are used
+	 */
+	@Param({ "false", "true" })
+	public boolean eventDrivenScheduling;
+
+	/**
+	 * Time in microseconds every task sleeps or 0 if tasks do nothing
+	 */
+	@Param({ "0", "100" })
+	public long sleepMicros;
+
+	/**
+	 * Tasks
+	 */
+	private List<String> tasks;
+
+	/**
+	 * Number of the next task, so that tasks are not duplicates of tasks from previous invocations
+	 */
+	private long nextTaskNumber = 0;
+
+	/**
+	 * Queue Manager
+	 */
+	private BenchmarkQueueManager manager;
+
+	/**
+	 * Start queue
+	 */
+	@Setup(Level.Trial)
+	public void startManager() {
+		manager = new BenchmarkQueueManager(10, 2, sleepMicros);
+		manager.setEventDrivenScheduling(eventDrivenScheduling);
+		manager.init();
+	}
+
+	/**
+	 * Stop queue
+	 */
+	@TearDown(Level.Trial)
+	public void stopManager() {
+		manager.stop();
+	}
+
+	/**
+	 * Create tasks
+	 */
+	@Setup(Level.Invocation)
+	public void createTasks() {
+		tasks = new ArrayList<>(TASK_COUNT);
+		for (int i = 0; i < TASK_COUNT; i++) {
+			tasks.add("host" + (i % restrictionKeyCount) + "/" + nextTaskNumber++);
+		}
+	}
+
+	/**
+	 * Add tasks and wait until all of them completed
+	 * 
+	 * @throws InterruptedException
+	 */
+	@Benchmark
+	@OperationsPerInvocation(TASK_COUNT)
+	public void drainQueue() throws InterruptedException {
+		manager.expectCompletedTasks(TASK_COUNT);
+		manager.addTasksToQueue(tasks);
+		manager.awaitCompletedTasks();
+	}
+
+	/**
+	 * Add a single task and wait until it completed, which is the latency from adding a task to its completion, when the queue is idle
+	 * 
+	 * @throws InterruptedException
+	 */
+	@Benchmark
+	public void roundTrip() throws InterruptedException {
+		manager.expectCompletedTasks(1);
+		manager.addTaskToQueue(tasks.get(0));
+		manager.awaitCompletedTasks();
+	}
+}
@@ -157,7 +157,12 @@ public abstract class SQLiteDB<T> {
 
 		// Backup
 		if (Files.exists(dbFile)) {
-			CopyUtil.copy(databaseFile, target);
+			SQLiteDBOperationEvent event = beginOperationEvent("Backup");
+			try {
+				event.successful = CopyUtil.copy(databaseFile, target);
+			} finally {
+				commitOperationEvent(event);
+			}
 		}
 
 		// Delete old backup-Files
@@ -170,14 +175,103 @@ public abstract class SQLiteDB<T> {
 	 * @return True if successful, false otherwise
 	 */
 	private boolean defragDatabase() {
+		SQLiteDBOperationEvent event = beginOperationEvent("Vacuum");
 		try (Connection con = getDatabaseConnection()) {
 			try (PreparedStatement statement = con.prepareStatement(VACUUM_SQL_COMMAND)) {
 				statement.executeUpdate();
+				event.successful = true;
 				return true;
 			}
 		} catch (ClassNotFoundException | SQLException e) {
 			logger.error("Could not fragement database '{}'", databaseFile, e);
 			return false;
+		} finally {
+			commitOperationEvent(event);
+		}
+	}
+
+	/**
+	 * Creates and begins an event for an operation on the database. The event must be passed to {@link #commitOperationEvent(SQLiteDBOperationEvent)}
+	 * when the operation is finished. The event is only recorded if enabled in the JFR settings.
+	 * 
+	 * @param operation Operation
+	 * @return Event
+	 */
+	protected final SQLiteDBOperationEvent beginOperationEvent(String operation) {
+		SQLiteDBOperationEvent event = new SQLiteDBOperationEvent();
+		event.operation = operation;
+		event.begin();
+		return event;
+	}
+
+	/**
+	 * Ends and commits the event for an operation on the database
+	 * 
+	 * @param event Event
+	 */
+	protected final void commitOperationEvent(SQLiteDBOperationEvent event) {
+		event.end();
+		if (event.shouldCommit()) {
+			event.databaseFile = databaseFile;
+			event.tableName = tableName;
+			event.commit();
+		}
+	}
+
+	/**
+	 * Executes a query, which is recorded as operation event
+	 * 
+	 * @param statement Statement
+	 * @param operation Operation
+	 * @return Result Set
+	 * @throws SQLException
+	 */
+	protected final ResultSet executeQuery(PreparedStatement statement, String operation) throws SQLException {
+		SQLiteDBOperationEvent event = beginOperationEvent(operation);
+		try {
+			ResultSet result = statement.executeQuery();
+			event.successful = true;
+			return result;
+		} finally {
+			commitOperationEvent(event);
+		}
+	}
+
+	/**
+	 * Executes an update, which is recorded as operation event
+	 * 
+	 * @param statement Statement
+	 * @param operation Operation
+	 * @return Count of updated rows
+	 * @throws SQLException
+	 */
+	protected final int executeUpdate(PreparedStatement statement, String operation) throws SQLException {
+		SQLiteDBOperationEvent event = beginOperationEvent(operation);
+		try {
+			int count = statement.executeUpdate();
+			event.successful = true;
+			return count;
+		} finally {
+			commitOperationEvent(event);
+		}
+	}
+
+	/**
+	 * Executes a batch, which is recorded as operation event
+	 * 
+	 * @param statement Statement
+	 * @param operation Operation
+	 * @return Counts of updated rows
+	 * @throws SQLException
+	 */
+	protected final int[] executeBatch(PreparedStatement statement, String operation) throws SQLException {
+		SQLiteDBOperationEvent event = beginOperationEvent(operation);
+		try {
+			int[] counts = statement.executeBatch();
+			event.successful = true;
+			return counts;
+		} finally {
+			commitOperationEvent(event);
 		}
 	}
 
@@ -196,10 +290,17 @@ public abstract class SQLiteDB<T> {
 	 * @throws SQLException
 	 */
 	protected Connection getDatabaseConnection() throws ClassNotFoundException, SQLException {
-		// Load sqlite-jdbc-driver
-		Class.forName("org.sqlite.JDBC");
-		// Connect to db
-		return DriverManager.getConnection("jdbc:sqlite:" + databaseFile);
+		SQLiteDBOperationEvent event = beginOperationEvent("Connect");
+		try {
+			// Load sqlite-jdbc-driver
+			Class.forName("org.sqlite.JDBC");
+			// Connect to db
+			Connection con = DriverManager.getConnection("jdbc:sqlite:" + databaseFile);
+			event.successful = true;
+			return con;
+		} finally {
+			commitOperationEvent(event);
+		}
 	}
 
 	/**
@@ -0,0 +1,42 @@
+package ch.supertomcat.supertomcatutils.database.sqlite;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * JFR Event: Operation on a SQLite database. The duration of the event is the duration of the operation. Subclasses of {@link SQLiteDB} can use this
+ * event for their own operations, see {@link SQLiteDB#beginOperationEvent(String)}, and for single statements, see
+ * {@link SQLiteDB#executeQuery(java.sql.PreparedStatement, String)}.
+ */
+@Name("ch.supertomcat.supertomcatutils.database.SQLiteDBOperation")
+@Label("SQLite Database Operation")
+@Category({ "SupertomcatUtils", "Database" })
+@Description("Operation on a SQLite database")
+public class SQLiteDBOperationEvent extends Event {
+	/**
+	 * Database File
+	 */
+	@Label("Database File")
+	public String databaseFile;
+
+	/**
+	 * Table Name
+	 */
+	@Label("Table Name")
+	public String tableName;
+
+	/**
+	 * Operation
+	 */
+	@Label("Operation")
+	public String operation;
+
+	/**
+	 * Flag if the operation was successful
+	 */
+	@Label("Successful")
+	public boolean successful;
+}
@@ -198,6 +198,32 @@ public final class BrowserCookies {
 	 * @return Cookies
 	 */
 	public static List<BrowserCookie> getBrowserCookies(String url, CookieStrategy cookieStrategy, Map<String, String> cookieStrategyOptions) {
+		BrowserCookiesLookupEvent event = new BrowserCookiesLookupEvent();
+		event.begin();
+		List<BrowserCookie> cookies = null;
+		try {
+			cookies = getBrowserCookies(url, cookieStrategy, cookieStrategyOptions, event);
+			return cookies;
+		} finally {
+			event.end();
+			if (event.shouldCommit()) {
+				event.cookieStrategy = cookieStrategy.getClass();
+				event.cookieCount = cookies != null ? cookies.size() : 0;
+				event.commit();
+			}
+		}
+	}
+
+	/**
+	 * Returns the Cookies for an URL
+	 * 
+	 * @param url URL
+	 * @param cookieStrategy Cookie Strategy
+	 * @param cookieStrategyOptions Cookie Strategy Options
+	 * @param event Lookup Event
+	 * @return Cookies
+	 */
+	private static List<BrowserCookie> getBrowserCookies(String url, CookieStrategy cookieStrategy, Map<String, String> cookieStrategyOptions, BrowserCookiesLookupEvent event) {
 		URL completeURL;
 		try {
 			completeURL = HTTPUtil.parseURL(url);
@@ -210,6 +236,7 @@ public final class BrowserCookies {
 			// Remove brackets for IPv6 Addresses
 			domain = domain.substring(1, domain.length() - 1);
 		}
+		event.domain = domain;
 		String path = completeURL.getPath();
 		if (path.isEmpty()) {
 			path = "/";
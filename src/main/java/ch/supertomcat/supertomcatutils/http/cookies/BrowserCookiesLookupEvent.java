@@ -0,0 +1,34 @@
+package ch.supertomcat.supertomcatutils.http.cookies;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * JFR Event: Cookies were read from a browser. The duration of the event is the duration of the lookup.
+ */
+@Name("ch.supertomcat.supertomcatutils.http.BrowserCookiesLookup")
+@Label("Browser Cookies Lookup")
+@Category({ "SupertomcatUtils", "HTTP" })
+@Description("Cookies were read from a browser")
+public class BrowserCookiesLookupEvent extends Event {
+	/**
+	 * Domain
+	 */
+	@Label("Domain")
+	public String domain;
+
+	/**
+	 * Cookie Strategy
+	 */
+	@Label("Cookie Strategy")
+	public Class<?> cookieStrategy;
+
+	/**
+	 * Count of found cookies
+	 */
+	@Label("Cookie Count")
+	public int cookieCount;
+}
@@ -0,0 +1,136 @@
+package ch.supertomcat.supertomcatutils.io;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Token bucket which limits the throughput to a maximum count of bytes per second.
+ * 
+ * The bucket is implemented as generic cell rate algorithm. Instead of a token count and a refill timer only the time at which the bucket would be empty
+ * is stored and updated with a single compare and set, so concurrent threads never block each other. Callers reserve the bytes they read and then sleep
+ * for the returned time, which is 0 as long as the bucket has enough tokens.
+ */
+public class BandwidthLimiter {
+	/**
+	 * Nanoseconds per second
+	 */
+	private static final long NANOS_PER_SECOND = TimeUnit.SECONDS.toNanos(1);
+
+	/**
+	 * Time in nanoseconds at which all reserved bytes are transferred at the configured rate
+	 */
+	private final AtomicLong theoreticalArrivalTime = new AtomicLong(System.nanoTime());
+
+	/**
+	 * Maximum bytes per second or 0 if not limited
+	 */
+	private volatile long bytesPerSecond;
+
+	/**
+	 * Burst Time in nanoseconds, which is the capacity of the bucket expressed as time
+	 */
+	private volatile long burstNanos;
+
+	/**
+	 * Constructor with a bucket capacity of one second
+	 * 
+	 * @param bytesPerSecond Maximum bytes per second or 0 if not limited
+	 */
+	public BandwidthLimiter(long bytesPerSecond) {
+		this(bytesPerSecond, bytesPerSecond);
+	}
+
+	/**
+	 * Constructor
+	 * 
+	 * @param bytesPerSecond Maximum bytes per second or 0 if not limited
+	 * @param burstBytes Capacity of the bucket in bytes
+	 */
+	public BandwidthLimiter(long bytesPerSecond, long burstBytes) {
+		this.burstNanos = bytesPerSecond > 0 ? getNanosForBytes(burstBytes, bytesPerSecond) : 0;
+		this.bytesPerSecond = bytesPerSecond;
+	}
+
+	/**
+	 * Returns the bytesPerSecond
+	 * 
+	 * @return bytesPerSecond
+	 */
+	public long getBytesPerSecond() {
+		return bytesPerSecond;
+	}
+
+	/**
+	 * Sets the bytesPerSecond with a bucket capacity of one second
+	 * 
+	 * @param bytesPerSecond Maximum bytes per second or 0 if not limited
+	 */
+	public void setBytesPerSecond(long bytesPerSecond) {
+		setBytesPerSecond(bytesPerSecond, bytesPerSecond);
+	}
+
+	/**
+	 * Sets the bytesPerSecond
+	 * 
+	 * @param bytesPerSecond Maximum bytes per second or 0 if not limited
+	 * @param burstBytes Capacity of the bucket in bytes
+	 */
+	public void setBytesPerSecond(long bytesPerSecond, long burstBytes) {
+		this.burstNanos = bytesPerSecond > 0 ? getNanosForBytes(burstBytes, bytesPerSecond) : 0;
+		this.bytesPerSecond = bytesPerSecond;
+	}
+
+	/**
+	 * @return True if limited, false otherwise
+	 */
+	public boolean isLimited() {
+		return bytesPerSecond > 0;
+	}
+
+	/**
+	 * Reserve the given count of bytes
+	 * 
+	 * @param bytes Bytes
+	 * @return Time in nanoseconds the caller has to wait, before the bytes may be transferred
+	 */
+	public long reserve(long bytes) {
+		long rate = bytesPerSecond;
+		if (rate <= 0 || bytes <= 0) {
+			return 0;
+		}
+		long cost = getNanosForBytes(bytes, rate);
+		long burst = burstNanos;
+		while (true) {
+			long now = System.nanoTime();
+			long previous = theoreticalArrivalTime.get();
+			// Unused time before now is credit, but only up to the capacity of the bucket
+			long start = Math.max(previous, now - burst);
+			long next = start + cost;
+			if (theoreticalArrivalTime.compareAndSet(previous, next)) {
+				return Math.max(0, next - now - burst);
+			}
+		}
+	}
+
+	/**
+	 * Reserve the given count of bytes and wait until the bytes may be transferred
+	 * 
+	 * @param bytes Bytes
+	 * @throws InterruptedException
+	 */
+	public void acquire(long bytes) throws InterruptedException {
+		long waitTime = reserve(bytes);
+		if (waitTime > 0) {
+			TimeUnit.NANOSECONDS.sleep(waitTime);
+		}
+	}
+
+	/**
+	 * @param bytes Bytes
+	 * @param bytesPerSecond Bytes per second
+	 * @return Nanoseconds needed to transfer the bytes
+	 */
+	private static long getNanosForBytes(long bytes, long bytesPerSecond) {
+		return (long)((double)bytes * NANOS_PER_SECOND / bytesPerSecond);
+	}
+}
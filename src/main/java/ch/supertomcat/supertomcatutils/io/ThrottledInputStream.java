@@ -0,0 +1,76 @@
+package ch.supertomcat.supertomcatutils.io;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.List;
+
+/**
+ * Counting Input Stream, which limits the throughput by one or more {@link BandwidthLimiter}
+ */
+public class ThrottledInputStream extends CountingInputStream {
+	/**
+	 * Bandwidth Limiters
+	 */
+	private final List<BandwidthLimiter> bandwidthLimiters;
+
+	/**
+	 * Constructor
+	 * 
+	 * @param in InputStream
+	 * @param bandwidthLimiters Bandwidth Limiters
+	 */
+	public ThrottledInputStream(InputStream in, List<BandwidthLimiter> bandwidthLimiters) {
+		super(in);
+		this.bandwidthLimiters = List.copyOf(bandwidthLimiters);
+	}
+
+	/**
+	 * Constructor
+	 * 
+	 * @param in InputStream
+	 * @param bandwidthLimiters Bandwidth Limiters
+	 */
+	public ThrottledInputStream(InputStream in, BandwidthLimiter... bandwidthLimiters) {
+		this(in, List.of(bandwidthLimiters));
+	}
+
+	@Override
+	public int read() throws IOException {
+		int b = super.read();
+		if (b != -1) {
+			throttle(1);
+		}
+		return b;
+	}
+
+	@Override
+	public int read(byte[] b, int off, int len) throws IOException {
+		int n = super.read(b, off, len);
+		if (n > 0) {
+			throttle(n);
+		}
+		return n;
+	}
+
+	/**
+	 * Reserve the read bytes on all limiters and wait for the longest time
+	 * 
+	 * @param bytes Read bytes
+	 * @throws InterruptedIOException
+	 */
+	private void throttle(int bytes) throws InterruptedIOException {
+		long waitTime = 0;
+		for (BandwidthLimiter bandwidthLimiter : bandwidthLimiters) {
+			waitTime = Math.max(waitTime, bandwidthLimiter.reserve(bytes));
+		}
+		if (waitTime > 0) {
+			try {
+				Thread.sleep(waitTime / 1000000L, (int)(waitTime % 1000000L));
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new InterruptedIOException("Throttling was interrupted");
+			}
+		}
+	}
+}
@@ -0,0 +1,183 @@
+package ch.supertomcat.supertomcatutils.queue;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Controller which adapts the maximum connection count per restriction key by additive increase and multiplicative decrease (AIMD).
+ * 
+ * Every successful task, which was not slower than the latency threshold, increases the limit by 1 / limit, so the limit grows by about one per round of
+ * tasks. A failed or slow task multiplies the limit with the decrease factor. To prevent that a burst of failures of tasks, which were executing at the same
+ * time, collapses the limit, only tasks which were started after the last decrease can decrease the limit again. The limit is always between 1 and the
+ * configured maximum connection count.
+ * 
+ * Only restriction keys with a limit lower than the configured maximum are stored, so keys which are not throttled do not use any memory.
+ * 
+ * This class is not thread-safe. Access must be synchronized by the caller.
+ */
+public class AdaptiveConcurrencyController {
+	/**
+	 * Default Decrease Factor
+	 */
+	public static final double DEFAULT_DECREASE_FACTOR = 0.5;
+
+	/**
+	 * Limits by restriction key
+	 */
+	private final Map<String, AdaptiveLimit> limits = new HashMap<>();
+
+	/**
+	 * Factor by which the limit is multiplied on failure
+	 */
+	private double decreaseFactor = DEFAULT_DECREASE_FACTOR;
+
+	/**
+	 * Latency threshold in nanoseconds or 0 if latency is not considered
+	 */
+	private long latencyThreshold = 0;
+
+	/**
+	 * Constructor
+	 */
+	public AdaptiveConcurrencyController() {
+	}
+
+	/**
+	 * Returns the decreaseFactor
+	 * 
+	 * @return decreaseFactor
+	 */
+	public double getDecreaseFactor() {
+		return decreaseFactor;
+	}
+
+	/**
+	 * Sets the decreaseFactor
+	 * 
+	 * @param decreaseFactor Factor between 0 and 1 by which the limit is multiplied on failure
+	 */
+	public void setDecreaseFactor(double decreaseFactor) {
+		if (decreaseFactor <= 0 || decreaseFactor >= 1) {
+			throw new IllegalArgumentException("Decrease factor must be between 0 and 1: " + decreaseFactor);
+		}
+		this.decreaseFactor = decreaseFactor;
+	}
+
+	/**
+	 * Returns the latency threshold
+	 * 
+	 * @return Latency threshold in milliseconds or 0 if latency is not considered
+	 */
+	public long getLatencyThreshold() {
+		return TimeUnit.NANOSECONDS.toMillis(latencyThreshold);
+	}
+
+	/**
+	 * Sets the latency threshold
+	 * 
+	 * @param latencyThreshold Latency threshold in milliseconds, tasks which take longer are handled like failed tasks, or 0 if latency is not considered
+	 */
+	public void setLatencyThreshold(long latencyThreshold) {
+		this.latencyThreshold = TimeUnit.MILLISECONDS.toNanos(latencyThreshold);
+	}
+
+	/**
+	 * Returns the effective maximum connection count
+	 * 
+	 * @param restrictionKey Restriction Key
+	 * @param maxConnectionCount Configured maximum connection count or 0 if not limited
+	 * @return Effective maximum connection count or 0 if not limited
+	 */
+	public int getLimit(String restrictionKey, int maxConnectionCount) {
+		AdaptiveLimit limit = limits.get(restrictionKey);
+		if (limit == null) {
+			return maxConnectionCount;
+		}
+		int effectiveLimit = (int)limit.limit;
+		if (maxConnectionCount > 0 && effectiveLimit > maxConnectionCount) {
+			return maxConnectionCount;
+		}
+		return effectiveLimit;
+	}
+
+	/**
+	 * @return Effective maximum connection counts of all restriction keys, which are currently throttled
+	 */
+	public Map<String, Integer> getLimits() {
+		Map<String, Integer> effectiveLimits = new HashMap<>();
+		for (Map.Entry<String, AdaptiveLimit> entry : limits.entrySet()) {
+			effectiveLimits.put(entry.getKey(), (int)entry.getValue().limit);
+		}
+		return effectiveLimits;
+	}
+
+	/**
+	 * Update the limit of the restriction key with the outcome of a task
+	 * 
+	 * @param restrictionKey Restriction Key
+	 * @param maxConnectionCount Configured maximum connection count or 0 if not limited
+	 * @param currentConnectionCount Count of tasks for the restriction key, which were executing when the task completed, including the task
+	 * @param successful True if the task was successful, false otherwise
+	 * @param startTime Time in nanoseconds as returned by {@link System#nanoTime()} when the task was started
+	 * @param endTime Time in nanoseconds as returned by {@link System#nanoTime()} when the task completed
+	 */
+	public void taskCompleted(String restrictionKey, int maxConnectionCount, int currentConnectionCount, boolean successful, long startTime, long endTime) {
+		boolean decrease = !successful || (latencyThreshold > 0 && endTime - startTime > latencyThreshold);
+		AdaptiveLimit limit = limits.get(restrictionKey);
+		if (decrease) {
+			if (limit == null) {
+				/*
+				 * Start from the count of tasks which were executing, because if the maximum is not limited or very high, decreasing the maximum would have
+				 * no effect
+				 */
+				int startLimit = maxConnectionCount > 0 ? Math.min(maxConnectionCount, currentConnectionCount) : currentConnectionCount;
+				limit = new AdaptiveLimit(Math.max(1, startLimit));
+				limits.put(restrictionKey, limit);
+			} else if (startTime - limit.lastDecreaseTime < 0) {
+				// Task was started before the last decrease, so the failure was already handled
+				return;
+			}
+			limit.limit = Math.max(1, limit.limit * decreaseFactor);
+			limit.lastDecreaseTime = endTime;
+		} else if (limit != null) {
+			limit.limit += 1 / limit.limit;
+			if (maxConnectionCount > 0 && limit.limit >= maxConnectionCount) {
+				// Limit reached the configured maximum, so there is no need to keep it
+				limits.remove(restrictionKey);
+			}
+		}
+	}
+
+	/**
+	 * Reset all limits
+	 */
+	public void reset() {
+		limits.clear();
+	}
+
+	/**
+	 * Adaptive Limit of a restriction key
+	 */
+	private static class AdaptiveLimit {
+		/**
+		 * Limit
+		 */
+		private double limit;
+
+		/**
+		 * Time in nanoseconds of the last decrease
+		 */
+		private long lastDecreaseTime;
+
+		/**
+		 * Constructor
+		 * 
+		 * @param limit Limit
+		 */
+		public AdaptiveLimit(double limit) {
+			this.limit = limit;
+			this.lastDecreaseTime = System.nanoTime();
+		}
+	}
+}
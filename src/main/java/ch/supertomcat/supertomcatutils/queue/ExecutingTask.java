@@ -0,0 +1,144 @@
+package ch.supertomcat.supertomcatutils.queue;
+
+import java.util.List;
+import java.util.concurrent.Future;
+
+/**
+ * Task which is currently executing
+ * 
+ * @param <T> Task Type
+ * @param <R> Return Type
+ */
+public class ExecutingTask<T, R> {
+	/**
+	 * Queue Task
+	 */
+	private final QueueTask<T, R> queueTask;
+
+	/**
+	 * Restriction Key, which was used to count the task
+	 */
+	private final String restrictionKey;
+
+	/**
+	 * Restriction Keys of the parent restrictions, which were used to count the task
+	 */
+	private final List<String> parentRestrictionKeys;
+
+	/**
+	 * Time in nanoseconds as returned by {@link System#nanoTime()} when the task was started
+	 */
+	private final long startTime = System.nanoTime();
+
+	/**
+	 * Timeout of the watchdog or null if the task has no execution timeout
+	 */
+	private TimerWheel.Timeout watchdogTimeout = null;
+
+	/**
+	 * Flag if the task was cancelled, because it exceeded its execution timeout
+	 */
+	private volatile boolean timedOut = false;
+
+	/**
+	 * Constructor
+	 * 
+	 * @param queueTask Queue Task
+	 * @param restrictionKey Restriction Key, which was used to count the task
+	 */
+	public ExecutingTask(QueueTask<T, R> queueTask, String restrictionKey) {
+		this(queueTask, restrictionKey, List.of());
+	}
+
+	/**
+	 * Constructor
+	 * 
+	 * @param queueTask Queue Task
+	 * @param restrictionKey Restriction Key, which was used to count the task
+	 * @param parentRestrictionKeys Restriction Keys of the parent restrictions, which were used to count the task
+	 */
+	public ExecutingTask(QueueTask<T, R> queueTask, String restrictionKey, List<String> parentRestrictionKeys) {
+		this.queueTask = queueTask;
+		this.restrictionKey = restrictionKey;
+		this.parentRestrictionKeys = parentRestrictionKeys;
+	}
+
+	/**
+	 * Returns the queueTask
+	 * 
+	 * @return queueTask
+	 */
+	public QueueTask<T, R> getQueueTask() {
+		return queueTask;
+	}
+
+	/**
+	 * Returns the restrictionKey
+	 * 
+	 * @return restrictionKey
+	 */
+	public String getRestrictionKey() {
+		return restrictionKey;
+	}
+
+	/**
+	 * Returns the parentRestrictionKeys
+	 * 
+	 * @return parentRestrictionKeys
+	 */
+	public List<String> getParentRestrictionKeys() {
+		return parentRestrictionKeys;
+	}
+
+	/**
+	 * Returns the startTime
+	 * 
+	 * @return Time in nanoseconds as returned by {@link System#nanoTime()} when the task was started
+	 */
+	public long getStartTime() {
+		return startTime;
+	}
+
+	/**
+	 * Returns the watchdogTimeout
+	 * 
+	 * @return Timeout of the watchdog or null if the task has no execution timeout
+	 */
+	public TimerWheel.Timeout getWatchdogTimeout() {
+		return watchdogTimeout;
+	}
+
+	/**
+	 * Sets the watchdogTimeout
+	 * 
+	 * @param watchdogTimeout Timeout of the watchdog or null if the task has no execution timeout
+	 */
+	public void setWatchdogTimeout(TimerWheel.Timeout watchdogTimeout) {
+		this.watchdogTimeout = watchdogTimeout;
+	}
+
+	/**
+	 * Returns the timedOut
+	 * 
+	 * @return True if the task was cancelled, because it exceeded its execution timeout
+	 */
+	public boolean isTimedOut() {
+		return timedOut;
+	}
+
+	/**
+	 * Sets the timedOut
+	 * 
+	 * @param timedOut True if the task was cancelled, because it exceeded its execution timeout
+	 */
+	public void setTimedOut(boolean timedOut) {
+		this.timedOut = timedOut;
+	}
+
+	/**
+	 * @return Future
+	 */
+	public Future<R> getFuture() {
+		return queueTask.getFuture();
+	}
+}
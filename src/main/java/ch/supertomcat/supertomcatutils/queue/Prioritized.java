@@ -0,0 +1,16 @@
+package ch.supertomcat.supertomcatutils.queue;
+
+/**
+ * Interface for tasks, which have a priority
+ */
+public interface Prioritized {
+	/**
+	 * Default Priority
+	 */
+	public static final int DEFAULT_PRIORITY = 0;
+
+	/**
+	 * @return Priority (Higher value means higher priority)
+	 */
+	public int getPriority();
+}
@@ -1,21 +1,51 @@
 package ch.supertomcat.supertomcatutils.queue;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Deque;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CompletionService;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Predicate;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import ch.supertomcat.supertomcatutils.io.BandwidthLimiter;
+import ch.supertomcat.supertomcatutils.io.ThrottledInputStream;
+import ch.supertomcat.supertomcatutils.queue.jfr.TaskCompletedEvent;
+import ch.supertomcat.supertomcatutils.queue.jfr.TaskEnqueuedEvent;
+import ch.supertomcat.supertomcatutils.queue.jfr.TaskScheduledEvent;
+import ch.supertomcat.supertomcatutils.queue.journal.QueueJournal;
+import ch.supertomcat.supertomcatutils.queue.metrics.QueueMetrics;
+import ch.supertomcat.supertomcatutils.queue.metrics.SessionStatistics;
+
 /**
  * This class manages the download-slots.
  * It contains also the counters and restrictions for domains.
@@ -26,6 +56,31 @@ import org.slf4j.LoggerFactory;
  * @param <R> Task Return Type
  */
 public abstract class QueueManagerBase<T, R> {
+	/**
+	 * Default minimum time in milliseconds between two publications of the queue state snapshot
+	 */
+	public static final long DEFAULT_STATE_SNAPSHOT_INTERVAL = 100;
+
+	/**
+	 * Duration of a tick of the watchdog in milliseconds, which is the precision of execution timeouts
+	 */
+	private static final long WATCHDOG_TICK_DURATION = 100;
+
+	/**
+	 * Count of slots of the watchdog timer wheel
+	 */
+	private static final int WATCHDOG_SLOT_COUNT = 512;
+
+	/**
+	 * Minimum time in nanoseconds between two removals of passed request permit times
+	 */
+	private static final long REQUEST_PERMIT_TIMES_CLEANUP_INTERVAL = TimeUnit.SECONDS.toNanos(1);
+
+	/**
+	 * Maximum count of parent restrictions of a restriction, which protects against cycles
+	 */
+	private static final int MAX_RESTRICTION_DEPTH = 32;
+
 	/**
 	 * Logger
 	 */
@@ -37,9 +92,9 @@ public abstract class QueueManagerBase<T, R> {
 	protected final Object syncObject = new Object();
 
 	/**
-	 * Queue
+	 * Queue. Subclasses can get a copy of the queued tasks by {@link #getQueue()}.
 	 */
-	protected final List<T> queue = new ArrayList<>();
+	private final RestrictionQueue<T> queue = new RestrictionQueue<>();
 
 	/**
 	 * Queue Task Factory
@@ -47,9 +102,14 @@ public abstract class QueueManagerBase<T, R> {
 	protected final QueueTaskFactory<T, R> queueTaskFactory;
 
 	/**
-	 * Tasks which are currently executing
+	 * Tasks which are currently executing by their future. Subclasses can get a copy of the executing tasks by {@link #getExecutingTaskCallables()}.
 	 */
-	protected final List<QueueTask<T, R>> executingTasks = new ArrayList<>();
+	private final Map<Future<R>, ExecutingTask<T, R>> executingTasks = new LinkedHashMap<>();
+
+	/**
+	 * Count of executing tasks by task, to look up if a task is executing without iterating over the executing tasks
+	 */
+	private final Map<T, Integer> executingTaskIndex = new HashMap<>();
 
 	/**
 	 * Flag for indicating that it should be checked if any tasks from the queue can be executed
@@ -57,9 +117,110 @@ public abstract class QueueManagerBase<T, R> {
 	protected boolean checkScheduleTasks = true;
 
 	/**
-	 * Counters to handle max connections per host
+	 * Counters to handle max connections per host and parent restriction. Counters of restriction keys without executing tasks are removed. Subclasses can
+	 * read the counters by {@link #getRestrictedCount(String)} and {@link #getRestrictedCounts()}.
+	 */
+	private final RestrictionCounters counters = new RestrictionCounters();
+
+	/**
+	 * Time in nanoseconds from which on the next task is allowed to be started per rate limited restriction key. Passed times are removed periodically.
+	 */
+	protected final Map<String, Long> requestPermitTimes = new HashMap<>();
+
+	/**
+	 * Time in nanoseconds from which on passed request permit times are removed the next time
+	 */
+	private long requestPermitTimesCleanupTime = System.nanoTime();
+
+	/**
+	 * Tasks waiting for their retry, ordered by the time they are due
+	 */
+	protected final PriorityQueue<DelayedTask<T>> delayedTasks = new PriorityQueue<>(Comparator.comparingLong(DelayedTask::dueTime));
+
+	/**
+	 * Index of tasks waiting for their retry
+	 */
+	protected final Set<T> delayedTaskIndex = new HashSet<>();
+
+	/**
+	 * Retry attempts of tasks, which are currently retried
+	 */
+	protected final Map<T, Integer> retryAttempts = new HashMap<>();
+
+	/**
+	 * Futures of submitted tasks, which are completed when the task completed and is not retried again
+	 */
+	protected final Map<T, CompletableFuture<R>> submittedTasks = new HashMap<>();
+
+	/**
+	 * Tasks waiting for their prerequisites to complete
+	 */
+	protected final Map<T, WaitingTask<T>> waitingTasks = new HashMap<>();
+
+	/**
+	 * Tasks waiting for a prerequisite by prerequisite
+	 */
+	protected final Map<T, List<T>> dependentTasks = new HashMap<>();
+
+	/**
+	 * Default Retry Backoff
+	 */
+	protected RetryBackoff retryBackoff = RetryBackoff.DEFAULT;
+
+	/**
+	 * Adaptive Concurrency Controller
+	 */
+	protected final AdaptiveConcurrencyController adaptiveConcurrencyController = new AdaptiveConcurrencyController();
+
+	/**
+	 * Flag if the maximum connection count per restriction key is adapted to the outcome and latency of the tasks
+	 */
+	protected boolean adaptiveConcurrency = false;
+
+	/**
+	 * Global Bandwidth Limiter
+	 */
+	protected final BandwidthLimiter bandwidthLimiter = new BandwidthLimiter(0);
+
+	/**
+	 * Bandwidth Limiters per restriction key. Bandwidth limiters of restriction keys without executing tasks are removed.
+	 */
+	protected final Map<String, BandwidthLimiter> restrictionBandwidthLimiters = new ConcurrentHashMap<>();
+
+	/**
+	 * Maximum count of tasks in the queue or 0 if not limited
+	 */
+	protected int queueCapacity = 0;
+
+	/**
+	 * Maximum estimated size in bytes of all tasks in the queue or 0 if not limited
 	 */
-	protected final Map<String, AtomicInteger> counters = new HashMap<>();
+	protected long maxQueueEstimatedSize = 0;
+
+	/**
+	 * Estimated size in bytes of all tasks in the queue
+	 */
+	protected long queueEstimatedSize = 0;
+
+	/**
+	 * Metrics
+	 */
+	protected final QueueMetrics metrics = new QueueMetrics();
+
+	/**
+	 * Journal or null if the queue is not persisted
+	 */
+	protected QueueJournal<T> journal = null;
+
+	/**
+	 * Default maximum time in milliseconds a task is allowed to execute or 0 if not limited
+	 */
+	protected long executionTimeout = 0;
+
+	/**
+	 * Watchdog, which cancels tasks exceeding their execution timeout
+	 */
+	protected final TimerWheel watchdog = new TimerWheel("QueueWatchdogThread-", WATCHDOG_TICK_DURATION, TimeUnit.MILLISECONDS, WATCHDOG_SLOT_COUNT);
 
 	/**
 	 * Scheduler Thread
@@ -71,6 +232,21 @@ public abstract class QueueManagerBase<T, R> {
 	 */
 	protected Thread queueCompletionThread = null;
 
+	/**
+	 * Timer, which wakes up the scheduler when delayed tasks are due
+	 */
+	protected ScheduledExecutorService timer = null;
+
+	/**
+	 * Flag if a wake up of the scheduler is pending
+	 */
+	private boolean wakeUpPending = false;
+
+	/**
+	 * Time in nanoseconds of the pending wake up
+	 */
+	private long wakeUpTime = 0;
+
 	/**
 	 * Maximum connection count
 	 */
@@ -82,24 +258,69 @@ public abstract class QueueManagerBase<T, R> {
 	protected int maxConnectionCountPerHost;
 
 	/**
-	 * Files since application started
+	 * Files and bytes since application started
 	 */
-	protected int sessionFiles = 0;
+	protected final SessionStatistics sessionStatistics = new SessionStatistics();
 
 	/**
-	 * Bytes since application started
+	 * Open Slots
 	 */
-	protected long sessionBytes = 0;
+	protected volatile int openSlots;
 
 	/**
-	 * Open Slots
+	 * Count of tasks in the queue, which is published for reading without lock
+	 */
+	private volatile int publishedQueueSize = 0;
+
+	/**
+	 * Count of currently executing tasks, which is published for reading without lock
+	 */
+	private volatile int publishedTaskCount = 0;
+
+	/**
+	 * Version of the state of the queue, which is increased on every change
 	 */
-	protected int openSlots;
+	private long stateVersion = 0;
 
 	/**
-	 * Thread Pool
+	 * Flag if the queue, the executing tasks or the restrictions were changed since the state was published the last time
 	 */
-	protected ThreadPoolExecutor threadPool = null;
+	private boolean stateModified = false;
+
+	/**
+	 * Last published snapshot of the state of the queue
+	 */
+	private volatile QueueStateSnapshot stateSnapshot = new QueueStateSnapshot(0, System.currentTimeMillis(), false, 0, 0, 0, 0, 0, Map.of());
+
+	/**
+	 * Flag if a publication of the snapshot is pending
+	 */
+	private boolean stateSnapshotPending = false;
+
+	/**
+	 * Minimum time in milliseconds between two publications of the queue state snapshot or 0 if published on every change
+	 */
+	protected long stateSnapshotInterval = DEFAULT_STATE_SNAPSHOT_INTERVAL;
+
+	/**
+	 * Flag if the queue is running
+	 */
+	protected boolean running = false;
+
+	/**
+	 * Flag if tasks are scheduled directly on completion of a task instead of by the scheduler and completion threads
+	 */
+	protected boolean eventDrivenScheduling = false;
+
+	/**
+	 * Flag if tasks are executed on virtual threads instead of a thread pool
+	 */
+	protected boolean useVirtualThreads = false;
+
+	/**
+	 * Thread Pool. Subclasses can get the thread pool by {@link #getThreadPool()}.
+	 */
+	private ExecutorService threadPool = null;
 
 	/**
 	 * completionService
@@ -123,13 +344,14 @@ public abstract class QueueManagerBase<T, R> {
 		this.maxConnectionCount = maxConnectionCount;
 		this.maxConnectionCountPerHost = maxConnectionCountPerHost;
 		this.openSlots = maxConnectionCount;
+		metrics.updateGauges(0, 0, maxConnectionCount);
 	}
 
 	/**
 	 * Initialize
 	 */
 	public synchronized void init() {
-		if (schedulerThread != null && schedulerThread.isAlive()) {
+		if (running) {
 			return;
 		}
 
@@ -137,13 +359,40 @@ public abstract class QueueManagerBase<T, R> {
 			stop = false;
 			checkScheduleTasks = true;
 
-			for (Map.Entry<String, AtomicInteger> entry : counters.entrySet()) {
-				entry.getValue().set(0);
-			}
+			counters.clear();
 
-			threadPool = (ThreadPoolExecutor)Executors.newCachedThreadPool(new QueueManagerBaseThreadFactory("BaseQueueThread-"));
+			if (useVirtualThreads) {
+				/*
+				 * Every task gets its own virtual thread. The count of concurrently executing tasks is still limited by the scheduler.
+				 */
+				threadPool = Executors.newThreadPerTaskExecutor(new QueueManagerBaseThreadFactory("BaseQueueVirtualThread-", true));
+			} else {
+				/*
+				 * The pool must not reject tasks, which can happen with a SynchronousQueue, when a task is submitted directly after another task completed, but
+				 * before the thread of the completed task is available again. So a LinkedBlockingQueue is used and threads are allowed to time out like in a
+				 * cached thread pool.
+				 */
+				ThreadPoolExecutor threadPoolExecutor = new ThreadPoolExecutor(maxConnectionCount, maxConnectionCount, 60L, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), new QueueManagerBaseThreadFactory("BaseQueueThread-"));
+				threadPoolExecutor.allowCoreThreadTimeOut(true);
+				threadPool = threadPoolExecutor;
+			}
 			completionService = new ExecutorCompletionService<>(threadPool);
 			applyMaxConnectionCount();
+			timer = Executors.newSingleThreadScheduledExecutor(new QueueManagerBaseThreadFactory("QueueTimerThread-"));
+			watchdog.start();
+			wakeUpPending = false;
+			stateSnapshotPending = false;
+			running = true;
+
+			replayJournal();
+			stateChanged();
+			publishStateSnapshot();
+
+			if (eventDrivenScheduling) {
+				// There are no scheduler and completion threads, tasks are scheduled when they are added or when a task completed
+				scheduleTasks();
+				return;
+			}
 		}
 
 		schedulerThread = new Thread(new QueueSchedulerThread());
@@ -159,32 +408,48 @@ public abstract class QueueManagerBase<T, R> {
 	 * Stop
 	 */
 	public synchronized void stop() {
-		if (schedulerThread == null) {
+		if (!running) {
 			return;
 		}
 		synchronized (syncObject) {
 			stop = true;
 
+			/*
+			 * Close the journal before the tasks are cancelled, so that the tasks are not removed from the journal and are restored on the next start
+			 */
+			if (journal != null) {
+				journal.close();
+			}
+
 			cancelTasks(true);
 
 			threadPool.shutdownNow();
+			timer.shutdownNow();
 
-			checkScheduleTasks = true;
-			syncObject.notifyAll();
+			requestScheduling();
 		}
 
-		try {
-			schedulerThread.join();
-		} catch (InterruptedException e) {
-			logger.error("Wait for scheduler thread to finish was interrupted", e);
+		/*
+		 * Stopped after the lock was released, because stopping waits for the thread of the watchdog, which needs the lock to cancel timed out tasks
+		 */
+		watchdog.stop();
+
+		if (schedulerThread != null) {
+			try {
+				schedulerThread.join();
+			} catch (InterruptedException e) {
+				logger.error("Wait for scheduler thread to finish was interrupted", e);
+			}
 		}
 
-		queueCompletionThread.interrupt();
+		if (queueCompletionThread != null) {
+			queueCompletionThread.interrupt();
 
-		try {
-			queueCompletionThread.join();
-		} catch (InterruptedException e) {
-			logger.error("Wait for queue completion thread to finish was interrupted", e);
+			try {
+				queueCompletionThread.join();
+			} catch (InterruptedException e) {
+				logger.error("Wait for queue completion thread to finish was interrupted", e);
+			}
 		}
 
 		try {
@@ -197,6 +462,11 @@ public abstract class QueueManagerBase<T, R> {
 
 		schedulerThread = null;
 		queueCompletionThread = null;
+		synchronized (syncObject) {
+			running = false;
+			stateChanged();
+			publishStateSnapshot();
+		}
 	}
 
 	/**
@@ -206,18 +476,252 @@ public abstract class QueueManagerBase<T, R> {
 	 */
 	public synchronized void cancelTasks(boolean cancelAlreadyExecutingTasks) {
 		synchronized (syncObject) {
-			for (T task : queue) {
-				removedTaskFromQueue(task, false);
-			}
+			List<T> removedTasks = queue.getTasks();
 			queue.clear();
+			queueEstimatedSize = 0;
+
+			for (DelayedTask<T> delayedTask : delayedTasks) {
+				removedTasks.add(delayedTask.task());
+			}
+			delayedTasks.clear();
+			delayedTaskIndex.clear();
+			List<T> removedWaitingTasks = new ArrayList<>(waitingTasks.keySet());
+			waitingTasks.clear();
+			dependentTasks.clear();
+			cancelledTasksFromQueue(removedTasks);
+			cancelledWaitingTasks(removedWaitingTasks);
+			retryAttempts.clear();
 
 			if (cancelAlreadyExecutingTasks) {
 				cancelTaskCallables(true);
 			}
 
-			checkScheduleTasks = true;
+			// Wake up producers waiting for space in the queue
+			syncObject.notifyAll();
+			requestScheduling();
+		}
+	}
+
+	/**
+	 * Removes all tasks of the restriction key from the queue, including tasks waiting for their retry. Executing tasks are not cancelled.
+	 * 
+	 * @param restrictionKey Restriction Key
+	 * @return Count of removed tasks
+	 */
+	public int cancelTasksForRestrictionKey(String restrictionKey) {
+		return cancelTasksForRestrictionKey(restrictionKey, false);
+	}
+
+	/**
+	 * Removes all tasks of the restriction key from the queue, including tasks waiting for their retry. The cost depends only on the count of removed tasks,
+	 * because the queue holds the tasks per restriction key.
+	 * 
+	 * @param restrictionKey Restriction Key
+	 * @param cancelExecutingTasks True if executing tasks of the restriction key should be cancelled and interrupted, false otherwise
+	 * @return Count of removed tasks
+	 */
+	public int cancelTasksForRestrictionKey(String restrictionKey, boolean cancelExecutingTasks) {
+		synchronized (syncObject) {
+			List<T> removedTasks = queue.remove(restrictionKey);
+			decreaseQueueEstimatedSize(removedTasks);
+			Predicate<T> filter = task -> restrictionKey.equals(getRestrictionForTask(task).getRestrictionKey());
+			if (!delayedTasks.isEmpty()) {
+				removedTasks.addAll(removeDelayedTasks(filter));
+			}
+			List<T> removedWaitingTasks = removeWaitingTasks(filter, removedTasks);
+			if (cancelExecutingTasks) {
+				for (Map.Entry<Future<R>, ExecutingTask<T, R>> entry : new ArrayList<>(executingTasks.entrySet())) {
+					if (restrictionKey.equals(entry.getValue().getRestrictionKey())) {
+						cancelTaskCallable(entry.getKey(), true);
+					}
+				}
+			}
+			return cancelledTasksFromQueue(removedTasks) + cancelledWaitingTasks(removedWaitingTasks);
+		}
+	}
+
+	/**
+	 * Removes all tasks matching the predicate from the queue, including tasks waiting for their retry. Executing tasks are not cancelled.
+	 * 
+	 * @param filter Predicate, which returns true for tasks to be removed
+	 * @return Count of removed tasks
+	 */
+	public int cancelTasks(Predicate<? super T> filter) {
+		return cancelTasks(filter, false);
+	}
+
+	/**
+	 * Removes all tasks matching the predicate from the queue, including tasks waiting for their retry
+	 * 
+	 * @param filter Predicate, which returns true for tasks to be removed
+	 * @param cancelExecutingTasks True if executing tasks matching the predicate should be cancelled and interrupted, false otherwise
+	 * @return Count of removed tasks
+	 */
+	public int cancelTasks(Predicate<? super T> filter, boolean cancelExecutingTasks) {
+		synchronized (syncObject) {
+			List<T> removedTasks = queue.removeIf(filter);
+			decreaseQueueEstimatedSize(removedTasks);
+			if (!delayedTasks.isEmpty()) {
+				removedTasks.addAll(removeDelayedTasks(filter));
+			}
+			List<T> removedWaitingTasks = removeWaitingTasks(filter, removedTasks);
+			if (cancelExecutingTasks) {
+				for (Map.Entry<Future<R>, ExecutingTask<T, R>> entry : new ArrayList<>(executingTasks.entrySet())) {
+					if (filter.test(entry.getValue().getQueueTask().getTask())) {
+						cancelTaskCallable(entry.getKey(), true);
+					}
+				}
+			}
+			return cancelledTasksFromQueue(removedTasks) + cancelledWaitingTasks(removedWaitingTasks);
+		}
+	}
+
+	/**
+	 * Decrease the estimated size of the queue by the tasks removed from the queue. Tasks waiting for their retry must not be passed, because they were not
+	 * counted.
+	 * 
+	 * @param removedTasks Tasks removed from the queue
+	 */
+	private void decreaseQueueEstimatedSize(List<T> removedTasks) {
+		for (T task : removedTasks) {
+			queueEstimatedSize -= getEstimatedSizeForTask(task);
+		}
+	}
+
+	/**
+	 * Remove tasks waiting for their retry
+	 * 
+	 * @param filter Predicate, which returns true for tasks to be removed
+	 * @return Removed tasks
+	 */
+	private List<T> removeDelayedTasks(Predicate<? super T> filter) {
+		List<T> removedTasks = new ArrayList<>();
+		delayedTasks.removeIf(delayedTask -> {
+			if (filter.test(delayedTask.task())) {
+				removedTasks.add(delayedTask.task());
+				delayedTaskIndex.remove(delayedTask.task());
+				return true;
+			}
+			return false;
+		});
+		return removedTasks;
+	}
+
+	/**
+	 * Remove waiting tasks matching the predicate and waiting tasks depending on a removed task
+	 * 
+	 * @param filter Predicate, which returns true for waiting tasks to be removed
+	 * @param removedTasks Tasks, which were removed from the queue
+	 * @return Removed waiting tasks
+	 */
+	private List<T> removeWaitingTasks(Predicate<? super T> filter, List<T> removedTasks) {
+		if (waitingTasks.isEmpty()) {
+			return List.of();
+		}
+		List<T> tasks = new ArrayList<>(removedTasks);
+		for (T task : waitingTasks.keySet()) {
+			if (filter.test(task)) {
+				tasks.add(task);
+			}
+		}
+		return removeDependentTasks(tasks);
+	}
+
+	/**
+	 * Remove the tasks from the waiting tasks and all waiting tasks, which depend directly or indirectly on the tasks
+	 * 
+	 * @param tasks Tasks
+	 * @return Removed waiting tasks
+	 */
+	private List<T> removeDependentTasks(Collection<T> tasks) {
+		List<T> removedTasks = new ArrayList<>();
+		Deque<T> pendingTasks = new ArrayDeque<>(tasks);
+		while (!pendingTasks.isEmpty()) {
+			T task = pendingTasks.poll();
+			WaitingTask<T> waitingTask = waitingTasks.remove(task);
+			if (waitingTask != null) {
+				removedTasks.add(task);
+				// Remove the task from the other prerequisites, so that it is not released, if the task is added again later
+				for (T prerequisite : waitingTask.getPrerequisites()) {
+					List<T> dependents = dependentTasks.get(prerequisite);
+					if (dependents != null) {
+						dependents.remove(task);
+						if (dependents.isEmpty()) {
+							dependentTasks.remove(prerequisite);
+						}
+					}
+				}
+			}
+			List<T> dependents = dependentTasks.remove(task);
+			if (dependents != null) {
+				pendingTasks.addAll(dependents);
+			}
+		}
+		return removedTasks;
+	}
+
+	/**
+	 * Add waiting tasks to the queue, for which the completed task was the last uncompleted prerequisite
+	 * 
+	 * @param task Completed Task
+	 */
+	private void prerequisiteCompleted(T task) {
+		List<T> dependents = dependentTasks.remove(task);
+		if (dependents == null) {
+			return;
+		}
+		for (T dependent : dependents) {
+			WaitingTask<T> waitingTask = waitingTasks.get(dependent);
+			if (waitingTask != null && waitingTask.prerequisiteCompleted()) {
+				waitingTasks.remove(dependent);
+				if (enqueueTask(dependent)) {
+					journalTaskAdded(dependent);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Update metrics for waiting tasks, which were removed, and call the callback
+	 * 
+	 * @param removedWaitingTasks Waiting tasks, which were removed
+	 * @return Count of removed tasks
+	 */
+	private int cancelledWaitingTasks(List<T> removedWaitingTasks) {
+		if (removedWaitingTasks.isEmpty()) {
+			return 0;
+		}
+		metrics.tasksCancelled(removedWaitingTasks.size());
+		removedTasksFromQueue(removedWaitingTasks);
+		cancelSubmittedTasks(removedWaitingTasks);
+		return removedWaitingTasks.size();
+	}
+
+	/**
+	 * Update journal, metrics and retry attempts for tasks, which were removed from the queue and call the callback
+	 * 
+	 * @param removedTasks Tasks removed from the queue or waiting for their retry
+	 * @return Count of removed tasks
+	 */
+	private int cancelledTasksFromQueue(List<T> removedTasks) {
+		if (removedTasks.isEmpty()) {
+			return 0;
+		}
+		boolean queueLimited = queueCapacity > 0 || maxQueueEstimatedSize > 0;
+		for (T task : removedTasks) {
+			journalTaskCancelled(task);
+			retryAttempts.remove(task);
+		}
+		metrics.tasksCancelled(removedTasks.size());
+		stateModified = true;
+		removedTasksFromQueue(removedTasks);
+		cancelSubmittedTasks(removedTasks);
+		if (queueLimited) {
+			// Wake up producers waiting for space in the queue
 			syncObject.notifyAll();
 		}
+		requestScheduling();
+		return removedTasks.size();
 	}
 
 	/**
@@ -249,8 +753,11 @@ public abstract class QueueManagerBase<T, R> {
 				return;
 			}
 			this.maxConnectionCount = maxConnectionCount;
+			metrics.updateGauges(publishedQueueSize, publishedTaskCount, maxConnectionCount);
 			applyMaxConnectionCount();
 			updateOpenSlots(false);
+			stateModified = true;
+			requestScheduling();
 		}
 	}
 
@@ -259,9 +766,15 @@ public abstract class QueueManagerBase<T, R> {
 	 */
 	protected void applyMaxConnectionCount() {
 		synchronized (syncObject) {
-			if (threadPool != null) {
-				threadPool.setCorePoolSize(maxConnectionCount);
-				threadPool.setMaximumPoolSize(maxConnectionCount);
+			if (threadPool instanceof ThreadPoolExecutor threadPoolExecutor) {
+				// Core pool size must never be greater than maximum pool size, so the order of the calls depends on if the size is increased or decreased
+				if (maxConnectionCount > threadPoolExecutor.getMaximumPoolSize()) {
+					threadPoolExecutor.setMaximumPoolSize(maxConnectionCount);
+					threadPoolExecutor.setCorePoolSize(maxConnectionCount);
+				} else {
+					threadPoolExecutor.setCorePoolSize(maxConnectionCount);
+					threadPoolExecutor.setMaximumPoolSize(maxConnectionCount);
+				}
 			}
 		}
 	}
@@ -274,62 +787,611 @@ public abstract class QueueManagerBase<T, R> {
 	public void setMaxConnectionCountPerHost(int maxConnectionCountPerHost) {
 		synchronized (syncObject) {
 			this.maxConnectionCountPerHost = maxConnectionCountPerHost;
+			restrictionsChanged();
 		}
 	}
 
 	/**
-	 * Returns the sessionFiles
-	 * 
-	 * @return sessionFiles
+	 * Has to be called when the maximum connection count of restrictions were changed, so that tasks which were blocked by the restrictions are checked again
+	 * by the scheduler
 	 */
-	public int getSessionFiles() {
-		return sessionFiles;
+	public void restrictionsChanged() {
+		synchronized (syncObject) {
+			queue.unblockAll();
+			stateModified = true;
+			requestScheduling();
+		}
 	}
 
 	/**
-	 * Increases the session files since application started by 1
+	 * Returns the default retry backoff
+	 * 
+	 * @return Default retry backoff
 	 */
-	public synchronized void increaseSessionFiles() {
-		this.sessionFiles++;
+	public RetryBackoff getRetryBackoff() {
+		synchronized (syncObject) {
+			return retryBackoff;
+		}
 	}
 
 	/**
-	 * Returns the sessionBytes
+	 * Sets the default retry backoff, which is used for restrictions, which don't have their own backoff
 	 * 
-	 * @return sessionBytes
+	 * @param retryBackoff Default retry backoff
 	 */
-	public long getSessionBytes() {
-		return sessionBytes;
+	public void setRetryBackoff(RetryBackoff retryBackoff) {
+		synchronized (syncObject) {
+			this.retryBackoff = Objects.requireNonNull(retryBackoff);
+		}
 	}
 
 	/**
-	 * Increases the bytes since application started
+	 * Returns the adaptiveConcurrency
 	 * 
-	 * @param bytes Bytes
+	 * @return adaptiveConcurrency
 	 */
-	public synchronized void increaseSessionBytes(long bytes) {
-		this.sessionBytes += bytes;
+	public boolean isAdaptiveConcurrency() {
+		synchronized (syncObject) {
+			return adaptiveConcurrency;
+		}
+	}
+
+	/**
+	 * Sets the adaptiveConcurrency. If set to true, the maximum connection count per restriction key is lowered when tasks fail or are slower than the latency
+	 * threshold and raised again when tasks are successful, but never above the configured maximum. See {@link AdaptiveConcurrencyController}.
+	 * 
+	 * @param adaptiveConcurrency adaptiveConcurrency
+	 */
+	public void setAdaptiveConcurrency(boolean adaptiveConcurrency) {
+		synchronized (syncObject) {
+			this.adaptiveConcurrency = adaptiveConcurrency;
+			adaptiveConcurrencyController.reset();
+			restrictionsChanged();
+		}
+	}
+
+	/**
+	 * Sets the latency threshold for adaptive concurrency
+	 * 
+	 * @param latencyThreshold Latency threshold in milliseconds, tasks which take longer are handled like failed tasks, or 0 if latency is not considered
+	 */
+	public void setAdaptiveConcurrencyLatencyThreshold(long latencyThreshold) {
+		synchronized (syncObject) {
+			adaptiveConcurrencyController.setLatencyThreshold(latencyThreshold);
+		}
+	}
+
+	/**
+	 * Returns the effective maximum connection count for the restriction key
+	 * 
+	 * @param restrictionKey Restriction Key
+	 * @param maxConnectionCount Configured maximum connection count for the restriction key
+	 * @return Effective maximum connection count or 0 if not limited
+	 */
+	public int getEffectiveMaxConnectionCount(String restrictionKey, int maxConnectionCount) {
+		synchronized (syncObject) {
+			if (!adaptiveConcurrency) {
+				return maxConnectionCount;
+			}
+			return adaptiveConcurrencyController.getLimit(restrictionKey, maxConnectionCount);
+		}
+	}
+
+	/**
+	 * Returns the effective maximum connection counts of restriction keys, which are currently lowered by adaptive concurrency. Restriction keys, which are not
+	 * contained, use the configured maximum connection count.
+	 * 
+	 * @return Effective maximum connection counts by restriction key
+	 */
+	public Map<String, Integer> getEffectiveMaxConnectionCounts() {
+		synchronized (syncObject) {
+			return adaptiveConcurrencyController.getLimits();
+		}
+	}
+
+	/**
+	 * Returns the priority aging time
+	 * 
+	 * @return Priority aging time in milliseconds
+	 */
+	public long getPriorityAgingTime() {
+		synchronized (syncObject) {
+			return queue.getPriorityAgingTime();
+		}
+	}
+
+	/**
+	 * Sets the priority aging time. A task with a higher priority is executed before tasks with lower priority, which were added less than this time per
+	 * priority level before. Tasks with lower priority, which are waiting longer, are executed first, so they do not starve. Only applies to tasks added
+	 * afterwards.
+	 * 
+	 * @param priorityAgingTime Priority aging time in milliseconds
+	 */
+	public void setPriorityAgingTime(long priorityAgingTime) {
+		synchronized (syncObject) {
+			queue.setPriorityAgingTime(priorityAgingTime);
+		}
+	}
+
+	/**
+	 * Returns the scheduling mode
+	 * 
+	 * @return Scheduling mode
+	 */
+	public QueueSchedulingMode getSchedulingMode() {
+		synchronized (syncObject) {
+			return queue.getSchedulingMode();
+		}
+	}
+
+	/**
+	 * Sets the scheduling mode, which defines in which order the restriction keys are served
+	 * 
+	 * @param schedulingMode Scheduling mode
+	 */
+	public void setSchedulingMode(QueueSchedulingMode schedulingMode) {
+		synchronized (syncObject) {
+			queue.setSchedulingMode(schedulingMode);
+			requestScheduling();
+		}
+	}
+
+	/**
+	 * Returns the thread pool. The thread pool was always a {@link ThreadPoolExecutor} in earlier versions. This is still the case, if no virtual threads
+	 * are used, but if virtual threads are used, the thread pool starts a new virtual thread for every task.
+	 * 
+	 * @return Thread pool or null if the queue manager was not initialized
+	 */
+	protected ExecutorService getThreadPool() {
+		return threadPool;
+	}
+
+	/**
+	 * Returns the useVirtualThreads
+	 * 
+	 * @return useVirtualThreads
+	 */
+	public boolean isUseVirtualThreads() {
+		return useVirtualThreads;
+	}
+
+	/**
+	 * Sets the useVirtualThreads. If set to true, tasks are executed on virtual threads instead of a thread pool, which is useful if tasks are mostly blocking
+	 * on I/O. The count of concurrently executing tasks is limited by the maximum connection counts in both cases. Changes are applied on the next call of
+	 * {@link #init()}.
+	 * 
+	 * @param useVirtualThreads useVirtualThreads
+	 */
+	public synchronized void setUseVirtualThreads(boolean useVirtualThreads) {
+		this.useVirtualThreads = useVirtualThreads;
+	}
+
+	/**
+	 * Returns the eventDrivenScheduling
+	 * 
+	 * @return eventDrivenScheduling
+	 */
+	public boolean isEventDrivenScheduling() {
+		return eventDrivenScheduling;
+	}
+
+	/**
+	 * Sets the eventDrivenScheduling. If set to true, there are no scheduler and completion threads. Instead the thread, which executed a task, handles the
+	 * completion of the task and starts the next tasks directly. This means {@link #completedTaskCallable(QueueTask)} is called on the thread which executed
+	 * the task. Changes are applied on the next call of {@link #init()}.
+	 * 
+	 * @param eventDrivenScheduling eventDrivenScheduling
+	 */
+	public synchronized void setEventDrivenScheduling(boolean eventDrivenScheduling) {
+		this.eventDrivenScheduling = eventDrivenScheduling;
+	}
+
+	/**
+	 * Returns the queueCapacity
+	 * 
+	 * @return Maximum count of tasks in the queue or 0 if not limited
+	 */
+	public int getQueueCapacity() {
+		synchronized (syncObject) {
+			return queueCapacity;
+		}
+	}
+
+	/**
+	 * Sets the queueCapacity. If the queue is full, {@link #putTask(Object)} and {@link #offerTask(Object, long, TimeUnit)} wait until there is space and
+	 * {@link #addTaskToQueue(Object)} and {@link #addTasksToQueue(List)} reject the tasks, see {@link #rejectedTask(Object)}.
+	 * 
+	 * Tasks, which are retried or restored from the journal, are always added, so the queue might temporarily contain more tasks.
+	 * 
+	 * @param queueCapacity Maximum count of tasks in the queue or 0 if not limited
+	 */
+	public void setQueueCapacity(int queueCapacity) {
+		synchronized (syncObject) {
+			this.queueCapacity = queueCapacity;
+			syncObject.notifyAll();
+		}
+	}
+
+	/**
+	 * Returns the maxQueueEstimatedSize
+	 * 
+	 * @return Maximum estimated size in bytes of all tasks in the queue or 0 if not limited
+	 */
+	public long getMaxQueueEstimatedSize() {
+		synchronized (syncObject) {
+			return maxQueueEstimatedSize;
+		}
+	}
+
+	/**
+	 * Sets the maxQueueEstimatedSize. Works the same way as the queue capacity, but limits the sum of the estimated sizes of the tasks, see
+	 * {@link #getEstimatedSizeForTask(Object)}. A single task is always accepted by an empty queue, even if it is larger than the maximum.
+	 * 
+	 * @param maxQueueEstimatedSize Maximum estimated size in bytes of all tasks in the queue or 0 if not limited
+	 */
+	public void setMaxQueueEstimatedSize(long maxQueueEstimatedSize) {
+		synchronized (syncObject) {
+			this.maxQueueEstimatedSize = maxQueueEstimatedSize;
+			syncObject.notifyAll();
+		}
+	}
+
+	/**
+	 * Returns the queueEstimatedSize
+	 * 
+	 * @return Estimated size in bytes of all tasks in the queue
+	 */
+	public long getQueueEstimatedSize() {
+		synchronized (syncObject) {
+			return queueEstimatedSize;
+		}
+	}
+
+	/**
+	 * Returns the metrics, which can be registered as MBean by {@link QueueMetrics#registerMBean(String)}
+	 * 
+	 * @return Metrics
+	 */
+	public QueueMetrics getMetrics() {
+		return metrics;
+	}
+
+	/**
+	 * Returns the journal
+	 * 
+	 * @return Journal or null if the queue is not persisted
+	 */
+	public QueueJournal<T> getJournal() {
+		return journal;
+	}
+
+	/**
+	 * Sets the journal. If a journal is set, all additions, starts, completions and cancellations of tasks are written to the journal and the tasks which were
+	 * in the queue or executing when the journal was last written are added to the queue again on the next call of {@link #init()}. Tasks which are still in
+	 * the queue when {@link #stop()} is called, are kept in the journal.
+	 * 
+	 * Changes are applied on the next call of {@link #init()}. The journal is closed by {@link #stop()} and opened again by {@link #init()}.
+	 * 
+	 * @param journal Journal or null if the queue is not persisted
+	 */
+	public synchronized void setJournal(QueueJournal<T> journal) {
+		this.journal = journal;
+	}
+
+	/**
+	 * Returns the executionTimeout
+	 * 
+	 * @return Default maximum time in milliseconds a task is allowed to execute or 0 if not limited
+	 */
+	public long getExecutionTimeout() {
+		synchronized (syncObject) {
+			return executionTimeout;
+		}
+	}
+
+	/**
+	 * Sets the executionTimeout, which is used for restrictions, which don't have their own timeout. Tasks which execute longer are cancelled and interrupted
+	 * by the watchdog, see {@link #isTaskTimedOut(QueueTask)}. Only applies to tasks started afterwards.
+	 * 
+	 * @param executionTimeout Default maximum time in milliseconds a task is allowed to execute or 0 if not limited
+	 */
+	public void setExecutionTimeout(long executionTimeout) {
+		synchronized (syncObject) {
+			this.executionTimeout = executionTimeout;
+		}
+	}
+
+	/**
+	 * Returns the maximum bytes per second for all tasks
+	 * 
+	 * @return Maximum bytes per second or 0 if not limited
+	 */
+	public long getMaxBytesPerSecond() {
+		return bandwidthLimiter.getBytesPerSecond();
+	}
+
+	/**
+	 * Sets the maximum bytes per second for all tasks. Only applies to input streams created by {@link #createThrottledInputStream(Object, InputStream)}.
+	 * 
+	 * @param maxBytesPerSecond Maximum bytes per second or 0 if not limited
+	 */
+	public void setMaxBytesPerSecond(long maxBytesPerSecond) {
+		bandwidthLimiter.setBytesPerSecond(maxBytesPerSecond);
+	}
+
+	/**
+	 * Wraps the given input stream, so that the throughput is limited by the maximum bytes per second for all tasks and the maximum bytes per second of the
+	 * restriction of the task. Tasks should use this method to wrap the input stream of their download.
+	 * 
+	 * @param task Task
+	 * @param in InputStream
+	 * @return Throttled InputStream
+	 */
+	public ThrottledInputStream createThrottledInputStream(T task, InputStream in) {
+		List<BandwidthLimiter> bandwidthLimiters = new ArrayList<>(2);
+		bandwidthLimiters.add(bandwidthLimiter);
+
+		Restriction restriction = getRestrictionForTask(task);
+		String restrictionKey = restriction.getRestrictionKey();
+		long maxBytesPerSecond = restriction.getMaxBytesPerSecond();
+		if (maxBytesPerSecond > 0) {
+			BandwidthLimiter restrictionBandwidthLimiter = restrictionBandwidthLimiters.computeIfAbsent(restrictionKey, k -> new BandwidthLimiter(maxBytesPerSecond));
+			if (restrictionBandwidthLimiter.getBytesPerSecond() != maxBytesPerSecond) {
+				restrictionBandwidthLimiter.setBytesPerSecond(maxBytesPerSecond);
+			}
+			bandwidthLimiters.add(restrictionBandwidthLimiter);
+		} else {
+			restrictionBandwidthLimiters.remove(restrictionKey);
+		}
+		return new ThrottledInputStream(in, bandwidthLimiters);
+	}
+
+	/**
+	 * Returns the sessionFiles
+	 * 
+	 * @return sessionFiles
+	 */
+	public int getSessionFiles() {
+		return (int)sessionStatistics.getFiles();
+	}
+
+	/**
+	 * Increases the session files since application started by 1
+	 */
+	public void increaseSessionFiles() {
+		sessionStatistics.increaseFiles();
+	}
+
+	/**
+	 * Increases the session files since application started by 1
+	 * 
+	 * @param restrictionKey Restriction Key
+	 */
+	public void increaseSessionFiles(String restrictionKey) {
+		sessionStatistics.increaseFiles(restrictionKey);
+	}
+
+	/**
+	 * Returns the sessionBytes
+	 * 
+	 * @return sessionBytes
+	 */
+	public long getSessionBytes() {
+		return sessionStatistics.getBytes();
+	}
+
+	/**
+	 * Increases the bytes since application started
+	 * 
+	 * @param bytes Bytes
+	 */
+	public void increaseSessionBytes(long bytes) {
+		sessionStatistics.increaseBytes(bytes);
+	}
+
+	/**
+	 * Increases the bytes since application started
+	 * 
+	 * @param restrictionKey Restriction Key
+	 * @param bytes Bytes
+	 */
+	public void increaseSessionBytes(String restrictionKey, long bytes) {
+		sessionStatistics.increaseBytes(restrictionKey, bytes);
+	}
+
+	/**
+	 * Returns the session statistics, which contain the files and bytes by restriction key and the throughput over the last seconds
+	 * 
+	 * @return Session Statistics
+	 */
+	public SessionStatistics getSessionStatistics() {
+		return sessionStatistics;
 	}
 
 	/**
 	 * @return Queue size
 	 */
-	public int getQueueSize() {
-		return queue.size();
+	public int getQueueSize() {
+		return publishedQueueSize;
+	}
+
+	/**
+	 * @return Count of tasks waiting for their retry
+	 */
+	public int getRetryQueueSize() {
+		synchronized (syncObject) {
+			return delayedTasks.size();
+		}
+	}
+
+	/**
+	 * @return Count of tasks waiting for their prerequisites to complete
+	 */
+	public int getWaitingTaskCount() {
+		synchronized (syncObject) {
+			return waitingTasks.size();
+		}
+	}
+
+	/**
+	 * @return Count of currently executing tasks
+	 */
+	public int getTaskCount() {
+		return publishedTaskCount;
+	}
+
+	/**
+	 * @return True if tasks are executing, false otherwise
+	 */
+	public boolean isExecutingTasks() {
+		return publishedQueueSize > 0 && publishedTaskCount > 0;
+	}
+
+	/**
+	 * Returns the last published snapshot of the state of the queue. This method does not lock, so it can be called by monitoring threads as often as
+	 * needed without blocking the scheduler.
+	 * 
+	 * While the queue is running, a new snapshot is published at most once per snapshot interval after the queue was changed, so the snapshot might be
+	 * slightly outdated. While the queue is not running, the snapshot is only published on {@link #init()} and {@link #stop()}, unless the interval is 0.
+	 * 
+	 * @return Snapshot
+	 */
+	public QueueStateSnapshot getStateSnapshot() {
+		return stateSnapshot;
+	}
+
+	/**
+	 * Returns a copy of the queued tasks. The queue was a list, which could be modified by subclasses, in earlier versions. Tasks have to be added and
+	 * removed with the methods of the queue manager now, for example {@link #addTaskToQueue(Object)} and {@link #cancelTasks(Predicate)}.
+	 * 
+	 * @return Tasks in the queue in the order they would be executed, if there were no restrictions
+	 */
+	protected List<T> getQueue() {
+		synchronized (syncObject) {
+			return queue.getTasks();
+		}
+	}
+
+	/**
+	 * Returns the tasks of the restriction key in the queue. The tasks are copied while holding the lock, but they are sorted after the lock was released.
+	 * 
+	 * @param restrictionKey Restriction Key
+	 * @return Tasks in the queue in the order they will be executed
+	 */
+	public List<T> getQueuedTasks(String restrictionKey) {
+		RestrictionQueue.QueuedTasks<T> queuedTasks;
+		synchronized (syncObject) {
+			queuedTasks = queue.copyTasks(restrictionKey);
+		}
+		return queuedTasks.getTasks();
+	}
+
+	/**
+	 * Returns a copy of the executing tasks. The executing tasks were a list, which could be modified by subclasses, in earlier versions.
+	 * 
+	 * @return Executing tasks in the order they were started
+	 */
+	protected List<QueueTask<T, R>> getExecutingTaskCallables() {
+		synchronized (syncObject) {
+			List<QueueTask<T, R>> taskCallables = new ArrayList<>(executingTasks.size());
+			for (ExecutingTask<T, R> executingTask : executingTasks.values()) {
+				taskCallables.add(executingTask.getQueueTask());
+			}
+			return taskCallables;
+		}
+	}
+
+	/**
+	 * Returns the currently executing tasks of the restriction key
+	 * 
+	 * @param restrictionKey Restriction Key
+	 * @return Currently executing tasks
+	 */
+	public List<T> getExecutingTasks(String restrictionKey) {
+		List<T> tasks = new ArrayList<>();
+		synchronized (syncObject) {
+			for (ExecutingTask<T, R> executingTask : executingTasks.values()) {
+				if (executingTask.getRestrictionKey().equals(restrictionKey)) {
+					tasks.add(executingTask.getQueueTask().getTask());
+				}
+			}
+		}
+		return tasks;
+	}
+
+	/**
+	 * Returns the stateSnapshotInterval
+	 * 
+	 * @return Minimum time in milliseconds between two publications of the queue state snapshot or 0 if published on every change
+	 */
+	public long getStateSnapshotInterval() {
+		synchronized (syncObject) {
+			return stateSnapshotInterval;
+		}
+	}
+
+	/**
+	 * Sets the stateSnapshotInterval
+	 * 
+	 * @param stateSnapshotInterval Minimum time in milliseconds between two publications of the queue state snapshot or 0 if published on every change
+	 */
+	public void setStateSnapshotInterval(long stateSnapshotInterval) {
+		synchronized (syncObject) {
+			this.stateSnapshotInterval = stateSnapshotInterval;
+		}
 	}
 
 	/**
-	 * @return Count of currently executing tasks
+	 * Has to be called when the queue or the executing tasks were changed. Publishes the counts and schedules the publication of the snapshot.
 	 */
-	public int getTaskCount() {
-		return executingTasks.size();
+	protected void stateChanged() {
+		synchronized (syncObject) {
+			stateModified = false;
+			stateVersion++;
+			publishedQueueSize = queue.size();
+			publishedTaskCount = executingTasks.size();
+			metrics.updateGauges(publishedQueueSize, publishedTaskCount, maxConnectionCount);
+
+			if (stateSnapshotInterval <= 0) {
+				publishStateSnapshot();
+			} else if (!stateSnapshotPending && timer != null && running) {
+				try {
+					timer.schedule(this::publishStateSnapshot, stateSnapshotInterval, TimeUnit.MILLISECONDS);
+					stateSnapshotPending = true;
+				} catch (RejectedExecutionException e) {
+					// Timer was already shutdown, because the queue is stopping
+				}
+			}
+		}
 	}
 
 	/**
-	 * @return True if tasks are executing, false otherwise
+	 * Create and publish the snapshot of the state of the queue
 	 */
-	public boolean isExecutingTasks() {
-		return !queue.isEmpty() && !executingTasks.isEmpty();
+	private void publishStateSnapshot() {
+		synchronized (syncObject) {
+			stateSnapshotPending = false;
+			if (stateSnapshot.version() == stateVersion && stateSnapshot.running() == running) {
+				return;
+			}
+
+			Map<String, Integer> executingTaskCounts = new HashMap<>();
+			for (ExecutingTask<T, R> executingTask : executingTasks.values()) {
+				executingTaskCounts.merge(executingTask.getRestrictionKey(), 1, Integer::sum);
+			}
+
+			Map<String, QueueStateSnapshot.RestrictionState> restrictions = new LinkedHashMap<>();
+			for (String restrictionKey : queue.getRestrictionKeys()) {
+				Integer executingTaskCount = executingTaskCounts.remove(restrictionKey);
+				restrictions.put(restrictionKey, new QueueStateSnapshot.RestrictionState(restrictionKey, queue.size(restrictionKey), executingTaskCount != null ? executingTaskCount : 0));
+			}
+			for (Map.Entry<String, Integer> entry : executingTaskCounts.entrySet()) {
+				restrictions.put(entry.getKey(), new QueueStateSnapshot.RestrictionState(entry.getKey(), 0, entry.getValue()));
+			}
+
+			Map<String, QueueStateSnapshot.RestrictionState> unmodifiableRestrictions = Collections.unmodifiableMap(restrictions);
+			stateSnapshot = new QueueStateSnapshot(stateVersion, System.currentTimeMillis(), running, queue.size(), delayedTasks.size(), executingTasks.size(), openSlots, maxConnectionCount, unmodifiableRestrictions);
+		}
 	}
 
 	/**
@@ -354,58 +1416,522 @@ public abstract class QueueManagerBase<T, R> {
 	/**
 	 * @return Open slots
 	 */
-	public int getOpenSlots() {
-		return openSlots;
+	public int getOpenSlots() {
+		return openSlots;
+	}
+
+	/**
+	 * Add task to queue
+	 * 
+	 * @param task Task
+	 */
+	public void addTaskToQueue(T task) {
+		synchronized (syncObject) {
+			if (isTaskQueued(task)) {
+				return;
+			}
+			if (!hasQueueSpace(task)) {
+				metrics.taskRejected();
+				rejectedTask(task);
+				return;
+			}
+			if (enqueueTask(task)) {
+				journalTaskAdded(task);
+				requestScheduling();
+			}
+		}
+	}
+
+	/**
+	 * Add tasks to queue. If the queue is full, the remaining tasks are rejected, see {@link #rejectedTask(Object)}.
+	 * 
+	 * @param tasks Tasks
+	 */
+	public void addTasksToQueue(List<T> tasks) {
+		synchronized (syncObject) {
+			for (T task : tasks) {
+				addTaskToQueueOrReject(task);
+			}
+			requestScheduling();
+		}
+	}
+
+	/**
+	 * Add task to queue, after all prerequisites completed successfully. Until then the task does not use a slot or any scheduler time. If a prerequisite
+	 * fails, is cancelled or is removed from the queue, the task and all tasks depending on it are removed, see {@link #removedTasksFromQueue(List)}.
+	 * 
+	 * Only prerequisites, which are in the queue, waiting for their retry, executing or waiting for their own prerequisites, are waited for. Other
+	 * prerequisites are regarded as completed, so prerequisites must be added to the queue before the task. Because of this, prerequisites can't form a
+	 * cycle.
+	 * 
+	 * The task is not counted for the queue capacity and is written to the journal, when it is added to the queue.
+	 * 
+	 * @param task Task
+	 * @param prerequisites Tasks, which must complete successfully before the task is added to the queue
+	 */
+	public void addTaskToQueue(T task, Collection<? extends T> prerequisites) {
+		synchronized (syncObject) {
+			if (addTaskToQueueOrWait(task, prerequisites)) {
+				requestScheduling();
+			}
+		}
+	}
+
+	/**
+	 * Add task to queue and return a future, which is completed with the result of the task, when the task completed and is not retried again. If the task
+	 * failed, the future is completed exceptionally with the exception of the task, if the task exceeded its execution timeout with a
+	 * {@link TimeoutException}. If the task is cancelled or removed from the queue, the future is cancelled. If the queue is full, the future is completed
+	 * exceptionally with a {@link RejectedExecutionException}.
+	 * 
+	 * If the task was already submitted and did not complete yet, the existing future is returned. Cancelling the returned future does not cancel the task.
+	 * 
+	 * The future is completed while the queue is locked, so dependent actions, which take a long time, should be executed asynchronously.
+	 * 
+	 * @param task Task
+	 * @return Future
+	 */
+	public CompletableFuture<R> submit(T task) {
+		synchronized (syncObject) {
+			CompletableFuture<R> future = submitTaskToQueue(task);
+			requestScheduling();
+			return future;
+		}
+	}
+
+	/**
+	 * Add task to queue, after all prerequisites completed successfully, and return a future, which is completed with the result of the task. See
+	 * {@link #addTaskToQueue(Object, Collection)} and {@link #submit(Object)}. If a prerequisite does not complete successfully, the future is cancelled.
+	 * 
+	 * @param task Task
+	 * @param prerequisites Tasks, which must complete successfully before the task is added to the queue
+	 * @return Future
+	 */
+	public CompletableFuture<R> submit(T task, Collection<? extends T> prerequisites) {
+		synchronized (syncObject) {
+			CompletableFuture<R> future = submittedTasks.get(task);
+			if (future != null) {
+				return future;
+			}
+			future = new CompletableFuture<>();
+			if (addTaskToQueueOrWait(task, prerequisites)) {
+				submittedTasks.put(task, future);
+			} else {
+				future.completeExceptionally(new RejectedExecutionException("Queue is full, task rejected: " + task));
+			}
+			requestScheduling();
+			return future;
+		}
+	}
+
+	/**
+	 * Add tasks to queue and return futures, which are completed with the results of the tasks. See {@link #submit(Object)}.
+	 * 
+	 * @param tasks Tasks
+	 * @return Futures of the tasks and a future for all tasks
+	 */
+	public TaskBatch<R> submitAll(List<T> tasks) {
+		List<CompletableFuture<R>> futures = new ArrayList<>(tasks.size());
+		synchronized (syncObject) {
+			for (T task : tasks) {
+				futures.add(submitTaskToQueue(task));
+			}
+			requestScheduling();
+		}
+		return new TaskBatch<>(futures);
+	}
+
+	/**
+	 * @param task Task
+	 * @return Future
+	 */
+	private CompletableFuture<R> submitTaskToQueue(T task) {
+		CompletableFuture<R> future = submittedTasks.get(task);
+		if (future != null) {
+			return future;
+		}
+		future = new CompletableFuture<>();
+		if (addTaskToQueueOrReject(task)) {
+			submittedTasks.put(task, future);
+		} else {
+			future.completeExceptionally(new RejectedExecutionException("Queue is full, task rejected: " + task));
+		}
+		return future;
+	}
+
+	/**
+	 * Add task to queue, if it has no uncompleted prerequisites, otherwise the task waits for them
+	 * 
+	 * @param task Task
+	 * @param prerequisites Prerequisites
+	 * @return True if the task was added, is waiting or is already queued, false if the task was rejected
+	 */
+	private boolean addTaskToQueueOrWait(T task, Collection<? extends T> prerequisites) {
+		if (isTaskQueued(task)) {
+			return true;
+		}
+		List<T> uncompletedPrerequisites = new ArrayList<>();
+		for (T prerequisite : new LinkedHashSet<>(prerequisites)) {
+			if (!prerequisite.equals(task) && (isTaskQueued(prerequisite) || isTaskExecuting(prerequisite))) {
+				uncompletedPrerequisites.add(prerequisite);
+			}
+		}
+		if (uncompletedPrerequisites.isEmpty()) {
+			return addTaskToQueueOrReject(task);
+		}
+		waitingTasks.put(task, new WaitingTask<>(task, uncompletedPrerequisites));
+		for (T prerequisite : uncompletedPrerequisites) {
+			dependentTasks.computeIfAbsent(prerequisite, k -> new ArrayList<>()).add(task);
+		}
+		return true;
+	}
+
+	/**
+	 * Add task to queue, if it is not already queued. If the queue is full, the task is rejected.
+	 * 
+	 * @param task Task
+	 * @return True if the task was added or is already queued, false if the task was rejected
+	 */
+	private boolean addTaskToQueueOrReject(T task) {
+		if (isTaskQueued(task)) {
+			return true;
+		}
+		if (!hasQueueSpace(task)) {
+			metrics.taskRejected();
+			rejectedTask(task);
+			return false;
+		}
+		if (enqueueTask(task)) {
+			journalTaskAdded(task);
+		}
+		return true;
+	}
+
+	/**
+	 * Add task to queue. If the queue is full, waits until there is space in the queue.
+	 * 
+	 * @param task Task
+	 * @return True if the task was added, false if it was already contained in the queue
+	 * @throws InterruptedException
+	 */
+	public boolean putTask(T task) throws InterruptedException {
+		synchronized (syncObject) {
+			while (!isTaskQueued(task) && !hasQueueSpace(task)) {
+				syncObject.wait();
+			}
+			return addTaskToQueueIfNotQueued(task);
+		}
+	}
+
+	/**
+	 * Add task to queue. If the queue is full, waits until there is space in the queue or the timeout elapsed.
+	 * 
+	 * @param task Task
+	 * @param timeout Timeout
+	 * @param unit Unit of timeout
+	 * @return True if the task was added, false if it was already contained in the queue or the timeout elapsed
+	 * @throws InterruptedException
+	 */
+	public boolean offerTask(T task, long timeout, TimeUnit unit) throws InterruptedException {
+		synchronized (syncObject) {
+			long deadline = System.nanoTime() + unit.toNanos(timeout);
+			while (!isTaskQueued(task) && !hasQueueSpace(task)) {
+				long remaining = deadline - System.nanoTime();
+				if (remaining <= 0) {
+					return false;
+				}
+				TimeUnit.NANOSECONDS.timedWait(syncObject, remaining);
+			}
+			return addTaskToQueueIfNotQueued(task);
+		}
+	}
+
+	/**
+	 * @param task Task
+	 * @return True if the task was added, false if it was already contained in the queue
+	 */
+	private boolean addTaskToQueueIfNotQueued(T task) {
+		if (!isTaskQueued(task) && enqueueTask(task)) {
+			journalTaskAdded(task);
+			requestScheduling();
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 * @param task Task
+	 * @return True if the task is in the queue, waiting for a retry or waiting for its prerequisites, false otherwise
+	 */
+	private boolean isTaskQueued(T task) {
+		return queue.contains(task) || delayedTaskIndex.contains(task) || waitingTasks.containsKey(task);
+	}
+
+	/**
+	 * @param task Task
+	 * @return True if the task is currently executing, false otherwise
+	 */
+	private boolean isTaskExecuting(T task) {
+		return executingTaskIndex.containsKey(task);
+	}
+
+	/**
+	 * @param task Task
+	 * @return True if the queue capacity and maximum estimated size allow to add the task, false otherwise
+	 */
+	private boolean hasQueueSpace(T task) {
+		if (queueCapacity > 0 && queue.size() >= queueCapacity) {
+			return false;
+		}
+		return maxQueueEstimatedSize <= 0 || queueEstimatedSize == 0 || queueEstimatedSize + getEstimatedSizeForTask(task) <= maxQueueEstimatedSize;
+	}
+
+	/**
+	 * Called when a task was not added to the queue, because the queue is full. By default the rejected task is only logged. Subclasses can override this
+	 * method, for example to add the task again later.
+	 * 
+	 * @param task Task
+	 */
+	protected void rejectedTask(T task) {
+		logger.warn("Queue is full, task rejected: {}", task);
+	}
+
+	/**
+	 * Estimated size of the task for limiting the size of the queue, see {@link #setMaxQueueEstimatedSize(long)}. By default the estimated size of tasks
+	 * implementing {@link SizeEstimated} is used, all other tasks have a size of 0. The size of a task must not change while it is in the queue.
+	 * 
+	 * @param task Task
+	 * @return Estimated size in bytes
+	 */
+	protected long getEstimatedSizeForTask(T task) {
+		if (task instanceof SizeEstimated sizeEstimated) {
+			return sizeEstimated.getEstimatedSize();
+		}
+		return 0;
+	}
+
+	/**
+	 * Add task to the restriction queue
+	 * 
+	 * @param task Task
+	 * @return True if the task was added, false if it was already contained in the queue
+	 */
+	private boolean enqueueTask(T task) {
+		Restriction restriction = getRestrictionForTask(task);
+		int priority = getPriorityForTask(task);
+		if (queue.add(restriction.getRestrictionKey(), task, priority, restriction.getWeight())) {
+			queueEstimatedSize += getEstimatedSizeForTask(task);
+			stateModified = true;
+			TaskEnqueuedEvent event = new TaskEnqueuedEvent();
+			if (event.shouldCommit()) {
+				event.task = String.valueOf(task);
+				event.restrictionKey = restriction.getRestrictionKey();
+				event.priority = priority;
+				event.queueSize = queue.size();
+				event.commit();
+			}
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Add the task to the queue again after a delay, which grows exponentially with every retry of the task. The backoff of the restriction of the task is
+	 * used or the default backoff if the restriction has none. The task does not use any slot or scheduler time while it is waiting.
+	 * 
+	 * The retry attempts of a task are counted as long as the task is retried from {@link #completedTaskCallable(QueueTask)}. When a task completes and is
+	 * not retried again, the count is reset.
+	 * 
+	 * @param task Task
+	 * @return True if the task will be retried, false if the task is already queued or waiting for a retry
+	 */
+	public boolean retryTask(T task) {
+		synchronized (syncObject) {
+			if (queue.contains(task) || delayedTaskIndex.contains(task)) {
+				return false;
+			}
+			int attempt = retryAttempts.merge(task, 1, Integer::sum);
+			RetryBackoff restrictionRetryBackoff = getRestrictionForTask(task).getRetryBackoff();
+			long delay = (restrictionRetryBackoff != null ? restrictionRetryBackoff : retryBackoff).getDelay(attempt);
+			long dueTime = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(delay);
+			delayedTasks.add(new DelayedTask<>(task, dueTime));
+			delayedTaskIndex.add(task);
+			journalTaskAdded(task);
+			stateChanged();
+			scheduleWakeUp(dueTime);
+			return true;
+		}
+	}
+
+	/**
+	 * @param task Task
+	 * @return Count of retries of the task or 0 if the task is not retried
+	 */
+	public int getRetryAttempts(T task) {
+		synchronized (syncObject) {
+			return retryAttempts.getOrDefault(task, 0);
+		}
+	}
+
+	/**
+	 * Open the journal and add the tasks from the journal to the queue
+	 */
+	private void replayJournal() {
+		if (journal == null || journal.isOpen()) {
+			return;
+		}
+		try {
+			Set<T> tasks = new LinkedHashSet<>(journal.open());
+			for (T task : tasks) {
+				if (!queue.contains(task) && !delayedTaskIndex.contains(task)) {
+					enqueueTask(task);
+				}
+			}
+			// Tasks which were added to the queue before the journal was opened, were not written to the journal
+			for (T task : queue.getTasks()) {
+				if (!tasks.contains(task)) {
+					journal.taskAdded(task);
+				}
+			}
+			logger.info("Restored {} tasks from journal", tasks.size());
+		} catch (IOException e) {
+			logger.error("Could not open journal", e);
+		}
+	}
+
+	/**
+	 * @param task Task
+	 */
+	private void journalTaskAdded(T task) {
+		if (journal != null) {
+			journal.taskAdded(task);
+		}
+	}
+
+	/**
+	 * @param task Task
+	 */
+	private void journalTaskCancelled(T task) {
+		if (journal != null) {
+			journal.taskCancelled(task);
+		}
+	}
+
+	/**
+	 * Add tasks, which are due for their retry, to the queue
+	 * 
+	 * @param now Current time in nanoseconds as returned by {@link System#nanoTime()}
+	 * @return True if tasks were added to the queue, false otherwise
+	 */
+	private boolean releaseDueTasks(long now) {
+		boolean released = false;
+		while (!delayedTasks.isEmpty() && delayedTasks.peek().dueTime() - now <= 0) {
+			T task = delayedTasks.poll().task();
+			delayedTaskIndex.remove(task);
+			enqueueTask(task);
+			released = true;
+		}
+		return released;
+	}
+
+	/**
+	 * Called when a task was removed from the queue, when the queue was stopped or when a task could not be scheduled for execution
+	 * 
+	 * @param task Task
+	 * @param executeFailure True if task could not be scheduled for execution, false otherwise
+	 */
+	protected abstract void removedTaskFromQueue(T task, boolean executeFailure);
+
+	/**
+	 * Called when tasks were removed from the queue by cancelling them. By default {@link #removedTaskFromQueue(Object, boolean)} is called for every task.
+	 * Subclasses can override this method to handle all tasks at once, for example to update the GUI only once.
+	 * 
+	 * @param tasks Tasks
+	 */
+	protected void removedTasksFromQueue(List<T> tasks) {
+		for (T task : tasks) {
+			removedTaskFromQueue(task, false);
+		}
+	}
+
+	/**
+	 * @param task Task
+	 * @deprecated The restriction key, which was used to count the task, is needed to decrement the counter, when the task completed, so
+	 *             {@link #addTaskToExecutingTasks(QueueTask, String)} should be used instead. This method uses the restriction key of the restriction of the
+	 *             task.
+	 */
+	@Deprecated
+	protected void addTaskToExecutingTasks(QueueTask<T, R> task) {
+		addTaskToExecutingTasks(task, getRestrictionForTask(task.getTask()).getRestrictionKey());
+	}
+
+	/**
+	 * @param task Task
+	 * @param restrictionKey Restriction Key, which was used to count the task
+	 */
+	protected void addTaskToExecutingTasks(QueueTask<T, R> task, String restrictionKey) {
+		addTaskToExecutingTasks(task, restrictionKey, List.of());
 	}
 
 	/**
-	 * Add task to queue
-	 * 
 	 * @param task Task
+	 * @param restrictionKey Restriction Key, which was used to count the task
+	 * @param parentRestrictionKeys Restriction Keys of the parent restrictions, which were used to count the task
 	 */
-	public void addTaskToQueue(T task) {
+	protected void addTaskToExecutingTasks(QueueTask<T, R> task, String restrictionKey, List<String> parentRestrictionKeys) {
 		synchronized (syncObject) {
-			if (!queue.contains(task)) {
-				queue.add(task);
-				checkScheduleTasks = true;
-				syncObject.notifyAll();
+			ExecutingTask<T, R> executingTask = new ExecutingTask<>(task, restrictionKey, parentRestrictionKeys);
+			executingTasks.put(task.getFuture(), executingTask);
+			executingTaskIndex.merge(task.getTask(), 1, Integer::sum);
+			long taskExecutionTimeout = getExecutionTimeoutForTask(task.getTask());
+			if (taskExecutionTimeout > 0) {
+				Future<R> future = task.getFuture();
+				executingTask.setWatchdogTimeout(watchdog.schedule(() -> taskTimedOut(future), taskExecutionTimeout, TimeUnit.MILLISECONDS));
 			}
+			stateModified = true;
+			updateOpenSlots(false);
 		}
 	}
 
 	/**
-	 * Add tasks to queue
+	 * Called by the watchdog when a task exceeded its execution timeout
 	 * 
-	 * @param tasks Tasks
+	 * @param future Future
 	 */
-	public void addTasksToQueue(List<T> tasks) {
+	private void taskTimedOut(Future<R> future) {
 		synchronized (syncObject) {
-			for (T task : tasks) {
-				if (!queue.contains(task)) {
-					queue.add(task);
-				}
+			ExecutingTask<T, R> executingTask = executingTasks.get(future);
+			if (executingTask == null || future.isDone()) {
+				return;
 			}
-			checkScheduleTasks = true;
-			syncObject.notifyAll();
+			logger.warn("Task exceeded its execution timeout and is cancelled: {}", executingTask.getQueueTask().getTask());
+			executingTask.setTimedOut(true);
+			cancelTaskCallable(future, true);
 		}
 	}
 
 	/**
-	 * Called when a task was removed from the queue, when the queue was stopped or when a task could not be scheduled for execution
+	 * Returns if the task was cancelled, because it exceeded its execution timeout. Can be called from {@link #completedTaskCallable(QueueTask)}.
 	 * 
 	 * @param task Task
-	 * @param executeFailure True if task could not be scheduled for execution, false otherwise
+	 * @return True if the task was cancelled, because it exceeded its execution timeout, false otherwise
 	 */
-	protected abstract void removedTaskFromQueue(T task, boolean executeFailure);
+	protected boolean isTaskTimedOut(QueueTask<T, R> task) {
+		synchronized (syncObject) {
+			ExecutingTask<T, R> executingTask = executingTasks.get(task.getFuture());
+			return executingTask != null && executingTask.isTimedOut();
+		}
+	}
 
 	/**
+	 * Maximum execution time for task. By default the execution timeout of the restriction of the task is used or the default execution timeout if the
+	 * restriction has none. Subclasses can override this method to set a timeout per task.
+	 * 
 	 * @param task Task
+	 * @return Maximum time in milliseconds the task is allowed to execute or 0 if not limited
 	 */
-	protected void addTaskToExecutingTasks(QueueTask<T, R> task) {
-		synchronized (syncObject) {
-			executingTasks.add(task);
-			updateOpenSlots(false);
-		}
+	protected long getExecutionTimeoutForTask(T task) {
+		long restrictionExecutionTimeout = getRestrictionForTask(task).getExecutionTimeout();
+		return restrictionExecutionTimeout > 0 ? restrictionExecutionTimeout : executionTimeout;
 	}
 
 	/**
@@ -415,42 +1941,43 @@ public abstract class QueueManagerBase<T, R> {
 	 */
 	protected void cancelTaskCallables(boolean interruptTaskIfRunning) {
 		synchronized (syncObject) {
-			for (QueueTask<T, R> task : executingTasks) {
-				task.getFuture().cancel(interruptTaskIfRunning);
+			/*
+			 * Iterate over a copy, because with event driven scheduling the cancelled task is removed directly
+			 */
+			for (Future<R> future : new ArrayList<>(executingTasks.keySet())) {
+				cancelTaskCallable(future, interruptTaskIfRunning);
 			}
 		}
 	}
 
+	/**
+	 * Cancel executing task
+	 * 
+	 * @param future Future
+	 * @param interruptTaskIfRunning True if running task should be interrupted, false otherwise
+	 */
+	protected void cancelTaskCallable(Future<R> future, boolean interruptTaskIfRunning) {
+		future.cancel(interruptTaskIfRunning);
+	}
+
 	/**
 	 * Remove Task Callables
 	 */
 	protected void removeTaskCallables() {
 		synchronized (syncObject) {
-			Iterator<QueueTask<T, R>> it = executingTasks.iterator();
+			Iterator<ExecutingTask<T, R>> it = executingTasks.values().iterator();
 			while (it.hasNext()) {
-				QueueTask<T, R> task = it.next();
-				if (task.getFuture() != null && task.getFuture().isDone()) {
-					// Update Counter
-					Restriction restriction = getRestrictionForTask(task.getTask());
-					String restrictionKey = restriction.getRestrictionKey();
-					AtomicInteger count = counters.get(restrictionKey);
-					if (count != null) {
-						// Decrement count, prevent negative value
-						count.updateAndGet(value -> value > 0 ? value - 1 : value);
-					}
-
-					// Call callback
-					completedTaskCallable(task);
-
-					// Remove task
+				ExecutingTask<T, R> executingTask = it.next();
+				if (executingTask.getFuture().isDone()) {
+					completedExecutingTask(executingTask);
 					it.remove();
+					stateModified = true;
 				}
 			}
 
 			updateOpenSlots(false);
 
-			checkScheduleTasks = true;
-			syncObject.notifyAll();
+			requestScheduling();
 		}
 	}
 
@@ -461,38 +1988,125 @@ public abstract class QueueManagerBase<T, R> {
 	 */
 	protected void removeTaskCallable(Future<R> future) {
 		synchronized (syncObject) {
-			QueueTask<T, R> taskForFuture = null;
+			ExecutingTask<T, R> executingTask = executingTasks.get(future);
+			if (executingTask != null) {
+				completedExecutingTask(executingTask);
+				executingTasks.remove(future);
+				stateModified = true;
+			} else {
+				logger.error("Task not found for future: {}", future);
+			}
 
-			for (QueueTask<T, R> task : executingTasks) {
-				if (future.equals(task.getFuture())) {
-					taskForFuture = task;
-					break;
-				}
+			updateOpenSlots(true);
+
+			requestScheduling();
+		}
+	}
+
+	/**
+	 * Update counter of completed task and call callback
+	 * 
+	 * @param executingTask Executing Task
+	 */
+	private void completedExecutingTask(ExecutingTask<T, R> executingTask) {
+		// Update Counter
+		String restrictionKey = executingTask.getRestrictionKey();
+		long endTime = System.nanoTime();
+		Future.State state = executingTask.getFuture().state();
+		metrics.taskCompleted(restrictionKey, state, endTime - executingTask.getStartTime());
+		TaskCompletedEvent event = new TaskCompletedEvent();
+		if (event.shouldCommit()) {
+			event.task = String.valueOf(executingTask.getQueueTask().getTask());
+			event.restrictionKey = restrictionKey;
+			event.state = state.name();
+			event.executionTime = endTime - executingTask.getStartTime();
+			event.commit();
+		}
+		if (adaptiveConcurrency) {
+			int maxCount = getMaxConnectionCount(executingTask.getQueueTask().getTask());
+			if (maxCount <= 0) {
+				maxCount = maxConnectionCount;
 			}
+			int currentCount = Math.max(counters.get(restrictionKey), 1);
+			boolean successful = isTaskSuccessful(executingTask.getQueueTask());
+			adaptiveConcurrencyController.taskCompleted(restrictionKey, maxCount, currentCount, successful, executingTask.getStartTime(), endTime);
+		}
+		if (counters.decrement(restrictionKey) == 0 && !restrictionBandwidthLimiters.isEmpty()) {
+			// Bandwidth limiter is created again by the next task of the restriction key
+			restrictionBandwidthLimiters.remove(restrictionKey);
+		}
+		queue.unblock(restrictionKey);
+		decrementParentRestrictionCounters(executingTask.getParentRestrictionKeys());
+		if (executingTask.getWatchdogTimeout() != null) {
+			executingTask.getWatchdogTimeout().cancel();
+		}
 
-			if (taskForFuture != null) {
-				// Update Counter
-				Restriction restriction = getRestrictionForTask(taskForFuture.getTask());
-				String restrictionKey = restriction.getRestrictionKey();
-				AtomicInteger count = counters.get(restrictionKey);
-				if (count != null) {
-					// Decrement count, prevent negative value
-					count.updateAndGet(value -> value > 0 ? value - 1 : value);
-				}
+		// Call callback
+		T task = executingTask.getQueueTask().getTask();
+		if (journal != null) {
+			// Written before the callback, so that the task is kept in the journal, if it is retried by the callback
+			journal.taskCompleted(task);
+		}
+		completedTaskCallable(executingTask.getQueueTask());
 
-				// Call callback
-				completedTaskCallable(taskForFuture);
+		if (!retryAttempts.isEmpty() && !delayedTaskIndex.contains(task)) {
+			// Task was not retried again, so the retry attempts are not needed anymore
+			retryAttempts.remove(task);
+		}
 
-				// Remove task
-				executingTasks.remove(taskForFuture);
-			} else {
-				logger.error("Task not found for future: {}", future);
+		if ((!submittedTasks.isEmpty() || !dependentTasks.isEmpty()) && !isTaskQueued(task)) {
+			// Task was not retried again or added to the queue again, so the result is final
+			CompletableFuture<R> submittedFuture = submittedTasks.remove(task);
+			if (submittedFuture != null) {
+				completeSubmittedTask(submittedFuture, executingTask);
 			}
+			if (dependentTasks.containsKey(task)) {
+				if (isTaskSuccessful(executingTask.getQueueTask())) {
+					prerequisiteCompleted(task);
+				} else {
+					cancelledWaitingTasks(removeDependentTasks(List.of(task)));
+				}
+			}
+		}
+		// Removed after the callback, because the task is still one of the executing tasks while the callback runs
+		executingTaskIndex.computeIfPresent(task, (k, count) -> count > 1 ? count - 1 : null);
+	}
 
-			updateOpenSlots(true);
+	/**
+	 * Complete the future of a submitted task with the result of the task
+	 * 
+	 * @param submittedFuture Future of the submitted task
+	 * @param executingTask Executing Task
+	 */
+	private void completeSubmittedTask(CompletableFuture<R> submittedFuture, ExecutingTask<T, R> executingTask) {
+		Future<R> future = executingTask.getFuture();
+		switch (future.state()) {
+			case SUCCESS -> submittedFuture.complete(future.resultNow());
+			case FAILED -> submittedFuture.completeExceptionally(future.exceptionNow());
+			default -> {
+				if (executingTask.isTimedOut()) {
+					submittedFuture.completeExceptionally(new TimeoutException("Task exceeded its execution timeout: " + executingTask.getQueueTask().getTask()));
+				} else {
+					submittedFuture.cancel(false);
+				}
+			}
+		}
+	}
 
-			checkScheduleTasks = true;
-			syncObject.notifyAll();
+	/**
+	 * Cancel the futures of submitted tasks, which were removed from the queue. Called after the callback, like futures of completed tasks.
+	 * 
+	 * @param tasks Tasks
+	 */
+	private void cancelSubmittedTasks(List<T> tasks) {
+		if (submittedTasks.isEmpty()) {
+			return;
+		}
+		for (T task : tasks) {
+			CompletableFuture<R> submittedFuture = submittedTasks.remove(task);
+			if (submittedFuture != null) {
+				submittedFuture.cancel(false);
+			}
 		}
 	}
 
@@ -503,6 +2117,30 @@ public abstract class QueueManagerBase<T, R> {
 	 */
 	protected abstract void completedTaskCallable(QueueTask<T, R> task);
 
+	/**
+	 * Returns if the completed task was successful. Used for adaptive concurrency. By default a task is successful if it completed without exception and was
+	 * not cancelled. Subclasses can override this method, for example to check the result of the task.
+	 * 
+	 * @param task Task
+	 * @return True if task was successful, false otherwise
+	 */
+	protected boolean isTaskSuccessful(QueueTask<T, R> task) {
+		return task.getFuture().state() == Future.State.SUCCESS;
+	}
+
+	/**
+	 * Priority for task. By default the priority of tasks implementing {@link Prioritized} is used, all other tasks have the default priority.
+	 * 
+	 * @param task Task
+	 * @return Priority for task (Higher value means higher priority)
+	 */
+	protected int getPriorityForTask(T task) {
+		if (task instanceof Prioritized prioritized) {
+			return prioritized.getPriority();
+		}
+		return Prioritized.DEFAULT_PRIORITY;
+	}
+
 	/**
 	 * Restriction for task
 	 * 
@@ -516,13 +2154,16 @@ public abstract class QueueManagerBase<T, R> {
 	 * @return Current Restricted Count
 	 */
 	protected int getRestrictedCount(String restrictionKey) {
-		synchronized (syncObject) {
-			AtomicInteger count = counters.get(restrictionKey);
-			if (count != null) {
-				return count.get();
-			}
-			return 0;
-		}
+		return counters.get(restrictionKey);
+	}
+
+	/**
+	 * Returns a copy of the counters. The counters were a map of AtomicInteger, which could be modified by subclasses, in earlier versions.
+	 * 
+	 * @return Current Restricted Counts by restriction key. Only contains restriction keys with executing tasks.
+	 */
+	protected Map<String, Integer> getRestrictedCounts() {
+		return counters.getCounts();
 	}
 
 	/**
@@ -542,6 +2183,360 @@ public abstract class QueueManagerBase<T, R> {
 		return max;
 	}
 
+	/**
+	 * Get the parent restrictions of the restriction of the task
+	 * 
+	 * @param task Task
+	 * @return Parent restrictions, starting with the direct parent, or an empty list if the restriction has no parent
+	 */
+	protected List<Restriction> getParentRestrictions(T task) {
+		Restriction parentRestriction = getRestrictionForTask(task).getParentRestriction();
+		if (parentRestriction == null) {
+			return List.of();
+		}
+		List<Restriction> parentRestrictions = new ArrayList<>();
+		while (parentRestriction != null) {
+			if (parentRestrictions.size() >= MAX_RESTRICTION_DEPTH) {
+				logger.error("Restriction chain of task is longer than {}, ignoring further parent restrictions: {}", MAX_RESTRICTION_DEPTH, task);
+				break;
+			}
+			parentRestrictions.add(parentRestriction);
+			parentRestriction = parentRestriction.getParentRestriction();
+		}
+		return parentRestrictions;
+	}
+
+	/**
+	 * @param parentRestrictions Parent Restrictions
+	 * @return Restriction Key of the first parent restriction, which reached its maximum connection count or null if no parent restriction reached it
+	 */
+	private String getBlockingRestrictionKey(List<Restriction> parentRestrictions) {
+		for (Restriction parentRestriction : parentRestrictions) {
+			int max = parentRestriction.getMaxConnectionCount();
+			if (max > 0) {
+				if (counters.get(parentRestriction.getRestrictionKey()) >= max) {
+					return parentRestriction.getRestrictionKey();
+				}
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * @param parentRestrictions Parent Restrictions
+	 * @return Restriction Keys of the parent restrictions
+	 */
+	private List<String> incrementParentRestrictionCounters(List<Restriction> parentRestrictions) {
+		if (parentRestrictions.isEmpty()) {
+			return List.of();
+		}
+		List<String> parentRestrictionKeys = new ArrayList<>(parentRestrictions.size());
+		for (Restriction parentRestriction : parentRestrictions) {
+			String parentRestrictionKey = parentRestriction.getRestrictionKey();
+			counters.increment(parentRestrictionKey);
+			parentRestrictionKeys.add(parentRestrictionKey);
+		}
+		return parentRestrictionKeys;
+	}
+
+	/**
+	 * Decrement the counters of the parent restrictions and unblock the buckets waiting for them
+	 * 
+	 * @param parentRestrictionKeys Restriction Keys of the parent restrictions
+	 */
+	private void decrementParentRestrictionCounters(List<String> parentRestrictionKeys) {
+		for (String parentRestrictionKey : parentRestrictionKeys) {
+			counters.decrement(parentRestrictionKey);
+			queue.unblock(parentRestrictionKey);
+		}
+	}
+
+	/**
+	 * Get minimum time between the start of two tasks for the restriction of the task
+	 * 
+	 * @param task Task
+	 * @return Minimum time in milliseconds between the start of two tasks or 0 if not limited
+	 */
+	protected long getMinRequestInterval(T task) {
+		return getRestrictionForTask(task).getMinRequestInterval();
+	}
+
+	/**
+	 * Request that it is checked if any tasks from the queue can be executed
+	 */
+	protected void requestScheduling() {
+		synchronized (syncObject) {
+			if (stateModified) {
+				// Scheduling is also requested by timers and wake ups, which don't change anything, so the state is only published if it was modified
+				stateChanged();
+			}
+			checkScheduleTasks = true;
+			if (eventDrivenScheduling) {
+				if (running && !stop) {
+					scheduleTasks();
+				}
+			} else {
+				syncObject.notifyAll();
+			}
+		}
+	}
+
+	/**
+	 * Submit task for execution
+	 * 
+	 * @param taskCallable Task Callable
+	 * @return Future
+	 */
+	private Future<R> submitTask(QueueTask<T, R> taskCallable) {
+		if (eventDrivenScheduling) {
+			QueueFutureTask future = new QueueFutureTask(taskCallable);
+			threadPool.execute(future);
+			return future;
+		}
+		return completionService.submit(taskCallable);
+	}
+
+	/**
+	 * Schedule a wake up of the scheduler at the given time, if there is not already an earlier wake up pending
+	 * 
+	 * @param dueTime Time in nanoseconds as returned by {@link System#nanoTime()}
+	 */
+	protected void scheduleWakeUp(long dueTime) {
+		synchronized (syncObject) {
+			if (timer == null || (wakeUpPending && dueTime - wakeUpTime >= 0)) {
+				return;
+			}
+			try {
+				timer.schedule(() -> wakeUp(dueTime), Math.max(0, dueTime - System.nanoTime()), TimeUnit.NANOSECONDS);
+				wakeUpPending = true;
+				wakeUpTime = dueTime;
+			} catch (RejectedExecutionException e) {
+				// Timer was already shutdown, because the queue is stopping
+			}
+		}
+	}
+
+	/**
+	 * Wake up the scheduler
+	 * 
+	 * @param dueTime Time in nanoseconds for which the wake up was scheduled
+	 */
+	private void wakeUp(long dueTime) {
+		synchronized (syncObject) {
+			if (wakeUpPending && wakeUpTime == dueTime) {
+				wakeUpPending = false;
+			}
+			requestScheduling();
+		}
+	}
+
+	/**
+	 * Remove request permit times, which have passed and therefore don't restrict any task anymore. Runs at most once per cleanup interval, so that the
+	 * cost does not depend on the count of restriction keys.
+	 * 
+	 * @param now Time in nanoseconds
+	 */
+	private void removePassedRequestPermitTimes(long now) {
+		if (requestPermitTimes.isEmpty() || now - requestPermitTimesCleanupTime < 0) {
+			return;
+		}
+		requestPermitTimes.values().removeIf(permitTime -> permitTime - now <= 0);
+		requestPermitTimesCleanupTime = now + REQUEST_PERMIT_TIMES_CLEANUP_INTERVAL;
+	}
+
+	/**
+	 * Execute tasks from the queue as long as there are open slots and tasks, which are allowed to be executed.
+	 * Only restriction keys which are not blocked or delayed are looked at, so the cost of this method does not depend on the size of the queue.
+	 */
+	protected void scheduleTasks() {
+		synchronized (syncObject) {
+			long now = System.nanoTime();
+			boolean tasksReleased = releaseDueTasks(now);
+			queue.releaseDueBuckets(now);
+			removePassedRequestPermitTimes(now);
+			boolean tasksRemovedFromQueue = false;
+
+			while (executingTasks.size() < maxConnectionCount) {
+				RestrictionQueue.Bucket<T> bucket = queue.pollReadyBucket();
+				if (bucket == null) {
+					break;
+				}
+
+				T task = bucket.peekTask();
+				String restrictionKey = bucket.getRestrictionKey();
+				int currentCountPerHost = counters.get(restrictionKey);
+				int maxCountPerHost = getEffectiveMaxConnectionCount(restrictionKey, getMaxConnectionCount(task));
+				if (maxCountPerHost > 0 && currentCountPerHost >= maxCountPerHost) {
+					// No more connections allowed for this host, so the bucket is not looked at again, until a task for this host completed
+					queue.block(bucket);
+					continue;
+				}
+
+				List<Restriction> parentRestrictions = getParentRestrictions(task);
+				String blockingRestrictionKey = getBlockingRestrictionKey(parentRestrictions);
+				if (blockingRestrictionKey != null) {
+					// No more connections allowed for a parent restriction, so the bucket is not looked at again, until a task for the parent restriction completed
+					queue.block(bucket, blockingRestrictionKey);
+					continue;
+				}
+
+				long minRequestInterval = getMinRequestInterval(task);
+				if (minRequestInterval > 0) {
+					Long permitTime = requestPermitTimes.get(restrictionKey);
+					if (permitTime != null && permitTime - now > 0) {
+						// Rate limit for this host is reached, so the bucket is not looked at again, until the next task is allowed to be started
+						queue.delay(bucket, permitTime);
+						continue;
+					}
+				}
+
+				// Download is allowed for this task, so remove it from queue and add it to executing tasks
+				long enqueueTime = bucket.peekEnqueueTime();
+				queue.pollTask(bucket);
+				queueEstimatedSize -= getEstimatedSizeForTask(task);
+				tasksRemovedFromQueue = true;
+
+				int restrictedCount = counters.increment(restrictionKey);
+				List<String> parentRestrictionKeys = incrementParentRestrictionCounters(parentRestrictions);
+
+				QueueTask<T, R> taskCallable = queueTaskFactory.createTaskCallable(task);
+
+				try {
+					Future<R> future = submitTask(taskCallable);
+					if (minRequestInterval > 0) {
+						// Set after the task was submitted, so that a task, which was rejected by the thread pool, does not use up the permit
+						requestPermitTimes.put(restrictionKey, now + TimeUnit.MILLISECONDS.toNanos(minRequestInterval));
+					}
+					taskCallable.setFuture(future);
+					addTaskToExecutingTasks(taskCallable, restrictionKey, parentRestrictionKeys);
+					metrics.taskScheduled(restrictionKey, now - enqueueTime);
+					TaskScheduledEvent event = new TaskScheduledEvent();
+					if (event.shouldCommit()) {
+						event.task = String.valueOf(task);
+						event.restrictionKey = restrictionKey;
+						event.queueWaitTime = Math.max(0, now - enqueueTime);
+						event.restrictedCount = restrictedCount;
+						event.commit();
+					}
+					if (journal != null) {
+						journal.taskStarted(task);
+					}
+				} catch (Exception e) {
+					logger.error("Could not schedule task: {}", task, e);
+					counters.decrement(restrictionKey);
+					decrementParentRestrictionCounters(parentRestrictionKeys);
+					journalTaskCancelled(task);
+					removedTaskFromQueue(task, true);
+					if (!submittedTasks.isEmpty()) {
+						CompletableFuture<R> submittedFuture = submittedTasks.remove(task);
+						if (submittedFuture != null) {
+							submittedFuture.completeExceptionally(e);
+						}
+					}
+					if (!dependentTasks.isEmpty()) {
+						cancelledWaitingTasks(removeDependentTasks(List.of(task)));
+					}
+				}
+			}
+
+			if (tasksReleased || tasksRemovedFromQueue) {
+				stateChanged();
+			}
+			if (tasksRemovedFromQueue && (queueCapacity > 0 || maxQueueEstimatedSize > 0)) {
+				// Wake up producers waiting for space in the queue
+				syncObject.notifyAll();
+			}
+
+			if (queue.hasDelayedBuckets()) {
+				scheduleWakeUp(queue.getNextDueTime());
+			}
+			if (!delayedTasks.isEmpty()) {
+				scheduleWakeUp(delayedTasks.peek().dueTime());
+			}
+		}
+	}
+
+	/**
+	 * Task waiting for its prerequisites to complete
+	 * 
+	 * @param <T> Task Type
+	 */
+	protected static class WaitingTask<T> {
+		/**
+		 * Task
+		 */
+		private final T task;
+
+		/**
+		 * Prerequisites, which were not completed, when the task was added
+		 */
+		private final List<T> prerequisites;
+
+		/**
+		 * Count of prerequisites, which did not complete yet
+		 */
+		private int uncompletedPrerequisiteCount;
+
+		/**
+		 * Constructor
+		 * 
+		 * @param task Task
+		 * @param prerequisites Prerequisites, which are not completed
+		 */
+		public WaitingTask(T task, List<T> prerequisites) {
+			this.task = task;
+			this.prerequisites = prerequisites;
+			this.uncompletedPrerequisiteCount = prerequisites.size();
+		}
+
+		/**
+		 * Returns the task
+		 * 
+		 * @return task
+		 */
+		public T getTask() {
+			return task;
+		}
+
+		/**
+		 * Returns the prerequisites, which were not completed, when the task was added
+		 * 
+		 * @return prerequisites
+		 */
+		public List<T> getPrerequisites() {
+			return prerequisites;
+		}
+
+		/**
+		 * Returns the count of prerequisites, which did not complete yet
+		 * 
+		 * @return Count of prerequisites, which did not complete yet
+		 */
+		public int getUncompletedPrerequisiteCount() {
+			return uncompletedPrerequisiteCount;
+		}
+
+		/**
+		 * Decrement the count of uncompleted prerequisites
+		 * 
+		 * @return True if all prerequisites are completed, false otherwise
+		 */
+		private boolean prerequisiteCompleted() {
+			uncompletedPrerequisiteCount--;
+			return uncompletedPrerequisiteCount == 0;
+		}
+	}
+
+	/**
+	 * Task waiting for its retry
+	 * 
+	 * @param <T> Task Type
+	 * @param task Task
+	 * @param dueTime Time in nanoseconds as returned by {@link System#nanoTime()} when the task is added to the queue again
+	 */
+	protected record DelayedTask<T>(T task, long dueTime) {
+	}
+
 	/**
 	 * Queue Scheduler Thread which executes tasks
 	 */
@@ -551,7 +2546,7 @@ public abstract class QueueManagerBase<T, R> {
 		public void run() {
 			while (!stop) {
 				synchronized (syncObject) {
-					while (!checkScheduleTasks || queue.isEmpty() || executingTasks.size() >= maxConnectionCount) {
+					while (!checkScheduleTasks || (queue.isEmpty() && delayedTasks.isEmpty()) || executingTasks.size() >= maxConnectionCount) {
 						try {
 							syncObject.wait();
 						} catch (InterruptedException e) {
@@ -562,44 +2557,7 @@ public abstract class QueueManagerBase<T, R> {
 						}
 					}
 
-					Iterator<T> itQueue = queue.iterator();
-					while (itQueue.hasNext()) {
-						if (executingTasks.size() >= maxConnectionCount) {
-							break;
-						}
-
-						T task = itQueue.next();
-						Restriction restriction = getRestrictionForTask(task);
-						String restrictionKey = restriction.getRestrictionKey();
-						AtomicInteger count = counters.get(restrictionKey);
-						if (count == null) {
-							count = new AtomicInteger();
-							counters.put(restrictionKey, count);
-						}
-
-						int currentCountPerHost = count.get();
-						int maxCountPerHost = getMaxConnectionCount(task);
-						if (maxCountPerHost > 0 && currentCountPerHost >= maxCountPerHost) {
-							// No more connections allowed for this host
-							continue;
-						}
-
-						// Download is allowed for this task, so remove it from queue and add it to executing tasks
-						itQueue.remove();
-
-						count.incrementAndGet();
-
-						QueueTask<T, R> taskCallable = queueTaskFactory.createTaskCallable(task);
-
-						try {
-							Future<R> future = completionService.submit(taskCallable);
-							taskCallable.setFuture(future);
-							addTaskToExecutingTasks(taskCallable);
-						} catch (Exception e) {
-							logger.error("Could not schedule task: {}", task, e);
-							removedTaskFromQueue(task, true);
-						}
-					}
+					scheduleTasks();
 
 					/*
 					 * Set flag to false, because now all tasks, which are able to execute were executed and as long as no new tasks are added or tasks finished
@@ -611,6 +2569,25 @@ public abstract class QueueManagerBase<T, R> {
 		}
 	}
 
+	/**
+	 * Future for event driven scheduling, which handles the completion of the task directly
+	 */
+	private class QueueFutureTask extends FutureTask<R> {
+		/**
+		 * Constructor
+		 * 
+		 * @param taskCallable Task Callable
+		 */
+		public QueueFutureTask(QueueTask<T, R> taskCallable) {
+			super(taskCallable);
+		}
+
+		@Override
+		protected void done() {
+			removeTaskCallable(this);
+		}
+	}
+
 	/**
 	 * Queue Completion Thread which waits for completed tasks
 	 */
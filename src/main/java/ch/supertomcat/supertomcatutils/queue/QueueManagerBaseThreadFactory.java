@@ -10,7 +10,7 @@ public class QueueManagerBaseThreadFactory implements ThreadFactory {
 	/**
 	 * Base Thread Factory
 	 */
-	private final ThreadFactory baseThreadFactory = Executors.defaultThreadFactory();
+	private final ThreadFactory baseThreadFactory;
 
 	/**
 	 * Thread Name Prefix
@@ -23,7 +23,18 @@ public class QueueManagerBaseThreadFactory implements ThreadFactory {
 	 * @param threadNamePrefix Thread Name Prefix
 	 */
 	public QueueManagerBaseThreadFactory(String threadNamePrefix) {
+		this(threadNamePrefix, false);
+	}
+
+	/**
+	 * Constructor
+	 * 
+	 * @param threadNamePrefix Thread Name Prefix
+	 * @param virtualThreads True if virtual threads should be created, false otherwise
+	 */
+	public QueueManagerBaseThreadFactory(String threadNamePrefix, boolean virtualThreads) {
 		this.threadNamePrefix = threadNamePrefix;
+		this.baseThreadFactory = virtualThreads ? Thread.ofVirtual().factory() : Executors.defaultThreadFactory();
 	}
 
 	@Override
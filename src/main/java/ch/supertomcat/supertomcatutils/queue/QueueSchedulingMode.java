@@ -0,0 +1,19 @@
+package ch.supertomcat.supertomcatutils.queue;
+
+/**
+ * Scheduling Mode, which defines in which order the restriction keys are served
+ */
+public enum QueueSchedulingMode {
+	/**
+	 * Tasks are executed in the order they were added, adjusted by their priority. A restriction key with many queued tasks is served first, as long as its
+	 * tasks are older than those of other restriction keys.
+	 */
+	ORDERED,
+
+	/**
+	 * Restriction keys are served in turns (Deficit Round Robin). Every time a restriction key gets its turn, it is allowed to execute as many tasks as its
+	 * weight, before the next restriction key gets its turn. Within a restriction key tasks are executed in the order they were added, adjusted by their
+	 * priority.
+	 */
+	FAIR
+}
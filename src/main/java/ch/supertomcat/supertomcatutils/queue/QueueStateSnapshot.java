@@ -0,0 +1,30 @@
+package ch.supertomcat.supertomcatutils.queue;
+
+import java.util.Map;
+
+/**
+ * Immutable snapshot of the state of a queue. The snapshot only contains counts, so publishing it does not depend on the size of the queue. The tasks of a
+ * restriction key can be requested by {@link QueueManagerBase#getQueuedTasks(String)} and {@link QueueManagerBase#getExecutingTasks(String)}.
+ * 
+ * @param version Version, which is increased on every change of the queue. Snapshots with the same version contain the same state.
+ * @param timestamp Time in milliseconds when the snapshot was created
+ * @param running True if the queue is running, false otherwise
+ * @param queueSize Count of tasks in the queue
+ * @param retryQueueSize Count of tasks waiting for their retry
+ * @param executingTaskCount Count of currently executing tasks
+ * @param openSlots Open Slots
+ * @param maxConnectionCount Maximum connection count
+ * @param restrictions State by restriction key
+ */
+public record QueueStateSnapshot(long version, long timestamp, boolean running, int queueSize, int retryQueueSize, int executingTaskCount, int openSlots,
+		int maxConnectionCount, Map<String, RestrictionState> restrictions) {
+	/**
+	 * State of a restriction key
+	 * 
+	 * @param restrictionKey Restriction Key
+	 * @param queuedTaskCount Count of tasks in the queue
+	 * @param executingTaskCount Count of currently executing tasks
+	 */
+	public record RestrictionState(String restrictionKey, int queuedTaskCount, int executingTaskCount) {
+	}
+}
@@ -0,0 +1,303 @@
+package ch.supertomcat.supertomcatutils.queue;
+
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import ch.supertomcat.supertomcatutils.queue.store.SQLiteQueueStore;
+import ch.supertomcat.supertomcatutils.queue.store.StoredTask;
+
+/**
+ * Feeds a queue manager with tasks claimed from a {@link SQLiteQueueStore}, which is shared by several processes.
+ * 
+ * The worker claims at most as many tasks as the prefetch count allows, submits them to the queue manager and renews the leases of its claimed tasks
+ * periodically. When a task completed, it is removed from the store. When a task was cancelled, for example because the queue manager was stopped, the
+ * claim is released, so that the task can be executed by another process.
+ * 
+ * All accesses to the store are done by the thread of the worker, so the queue manager is never blocked by the database. Completed tasks are collected and
+ * removed from the store on the next poll.
+ * 
+ * @param <T> Task Type
+ * @param <R> Task Return Type
+ */
+public class QueueStoreWorker<T, R> {
+	/**
+	 * Default time in milliseconds between two polls of the store
+	 */
+	public static final long DEFAULT_POLL_INTERVAL = 500;
+
+	/**
+	 * Logger
+	 */
+	private final Logger logger = LoggerFactory.getLogger(getClass());
+
+	/**
+	 * Queue Manager
+	 */
+	private final QueueManagerBase<T, R> manager;
+
+	/**
+	 * Store
+	 */
+	private final SQLiteQueueStore<T> store;
+
+	/**
+	 * Owner of the claims of this worker
+	 */
+	private final String owner;
+
+	/**
+	 * Tasks claimed by this worker, which did not complete yet
+	 */
+	private final Set<T> claimedTasks = ConcurrentHashMap.newKeySet();
+
+	/**
+	 * Claimed tasks, which completed, but were not yet removed from the store
+	 */
+	private final ConcurrentLinkedQueue<CompletedTask<T>> completedTasks = new ConcurrentLinkedQueue<>();
+
+	/**
+	 * Lease duration in milliseconds
+	 */
+	private long leaseDuration = SQLiteQueueStore.DEFAULT_LEASE_DURATION;
+
+	/**
+	 * Time in milliseconds between two polls of the store
+	 */
+	private long pollInterval = DEFAULT_POLL_INTERVAL;
+
+	/**
+	 * Maximum count of claimed tasks or 0 if the maximum connection count of the queue manager should be used
+	 */
+	private int prefetchCount = 0;
+
+	/**
+	 * Time in milliseconds when the leases were renewed the last time
+	 */
+	private long lastLeaseRenewal = 0;
+
+	/**
+	 * Timer or null if not started
+	 */
+	private ScheduledExecutorService timer = null;
+
+	/**
+	 * Constructor
+	 * 
+	 * @param manager Queue Manager
+	 * @param store Store
+	 */
+	public QueueStoreWorker(QueueManagerBase<T, R> manager, SQLiteQueueStore<T> store) {
+		this(manager, store, ProcessHandle.current().pid() + "-" + UUID.randomUUID());
+	}
+
+	/**
+	 * Constructor
+	 * 
+	 * @param manager Queue Manager
+	 * @param store Store
+	 * @param owner Owner of the claims of this worker, which must be unique over all processes
+	 */
+	public QueueStoreWorker(QueueManagerBase<T, R> manager, SQLiteQueueStore<T> store, String owner) {
+		this.manager = manager;
+		this.store = store;
+		this.owner = owner;
+	}
+
+	/**
+	 * Start
+	 */
+	public synchronized void start() {
+		if (timer != null) {
+			return;
+		}
+		timer = Executors.newSingleThreadScheduledExecutor(new QueueManagerBaseThreadFactory("QueueStoreWorkerThread-"));
+		timer.scheduleWithFixedDelay(this::poll, 0, pollInterval, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Stop. Claimed tasks are removed from the queue manager or cancelled, if they are already executing, and the claims of all tasks of this worker are
+	 * released.
+	 */
+	public synchronized void stop() {
+		if (timer == null) {
+			return;
+		}
+		timer.shutdown();
+		try {
+			timer.awaitTermination(60, TimeUnit.SECONDS);
+		} catch (InterruptedException e) {
+			logger.error("Wait for store worker thread to finish was interrupted", e);
+		}
+		timer = null;
+		manager.cancelTasks(claimedTasks::contains, true);
+		processCompletedTasks();
+		claimedTasks.clear();
+		store.releaseTasks(owner);
+	}
+
+	/**
+	 * Add task to the store. The restriction key, maximum connection count and priority of the task are taken from the queue manager.
+	 * 
+	 * @param task Task
+	 * @return True if the task was added, false if the task is already in the store or an error occurred
+	 */
+	public boolean addTask(T task) {
+		return store.addTask(task, manager.getRestrictionForTask(task).getRestrictionKey(), manager.getMaxConnectionCount(task), manager.getPriorityForTask(task));
+	}
+
+	/**
+	 * Renew leases if needed and claim tasks for the open slots of the queue manager
+	 */
+	private void poll() {
+		try {
+			processCompletedTasks();
+
+			long now = System.currentTimeMillis();
+			if (!claimedTasks.isEmpty() && now - lastLeaseRenewal >= leaseDuration / 3) {
+				store.renewLeases(owner, leaseDuration);
+				lastLeaseRenewal = now;
+			}
+
+			int maxClaimedTasks = prefetchCount > 0 ? prefetchCount : manager.getMaxConnectionCount();
+			int count = maxClaimedTasks - claimedTasks.size();
+			if (count <= 0) {
+				return;
+			}
+			List<StoredTask<T>> storedTasks = store.claimTasks(owner, count, leaseDuration);
+			if (storedTasks.isEmpty()) {
+				return;
+			}
+			if (claimedTasks.isEmpty()) {
+				lastLeaseRenewal = now;
+			}
+			for (StoredTask<T> storedTask : storedTasks) {
+				T task = storedTask.task();
+				claimedTasks.add(task);
+				manager.submit(task).whenComplete((result, ex) -> completedTasks.add(new CompletedTask<>(task, isCancelled(ex))));
+			}
+		} catch (Exception e) {
+			logger.error("Could not claim tasks from store", e);
+		}
+	}
+
+	/**
+	 * Remove completed tasks from the store or release their claims, if the tasks were cancelled
+	 */
+	private void processCompletedTasks() {
+		CompletedTask<T> completedTask;
+		while ((completedTask = completedTasks.poll()) != null) {
+			T task = completedTask.task();
+			if (!claimedTasks.remove(task)) {
+				continue;
+			}
+			if (completedTask.cancelled()) {
+				store.releaseTask(owner, task);
+			} else if (!store.completeTask(owner, task)) {
+				logger.warn("Task was completed, but was not claimed anymore, because the lease expired: {}", task);
+			}
+		}
+	}
+
+	/**
+	 * @param ex Exception or null if the task completed successfully
+	 * @return True if the task was cancelled or rejected and should be executed again, false otherwise
+	 */
+	private static boolean isCancelled(Throwable ex) {
+		Throwable cause = ex instanceof CompletionException && ex.getCause() != null ? ex.getCause() : ex;
+		return cause instanceof CancellationException || cause instanceof RejectedExecutionException;
+	}
+
+	/**
+	 * Returns the owner
+	 * 
+	 * @return owner
+	 */
+	public String getOwner() {
+		return owner;
+	}
+
+	/**
+	 * Returns the count of tasks claimed by this worker, which did not complete yet
+	 * 
+	 * @return Count of claimed tasks
+	 */
+	public int getClaimedTaskCount() {
+		return claimedTasks.size();
+	}
+
+	/**
+	 * Returns the lease duration
+	 * 
+	 * @return Lease duration in milliseconds
+	 */
+	public long getLeaseDuration() {
+		return leaseDuration;
+	}
+
+	/**
+	 * Sets the lease duration. Leases are renewed after a third of the lease duration.
+	 * 
+	 * @param leaseDuration Lease duration in milliseconds
+	 */
+	public void setLeaseDuration(long leaseDuration) {
+		this.leaseDuration = leaseDuration;
+	}
+
+	/**
+	 * Returns the poll interval
+	 * 
+	 * @return Time in milliseconds between two polls of the store
+	 */
+	public long getPollInterval() {
+		return pollInterval;
+	}
+
+	/**
+	 * Sets the poll interval. Must be set before the worker is started.
+	 * 
+	 * @param pollInterval Time in milliseconds between two polls of the store
+	 */
+	public void setPollInterval(long pollInterval) {
+		this.pollInterval = pollInterval;
+	}
+
+	/**
+	 * Returns the prefetch count
+	 * 
+	 * @return Maximum count of claimed tasks or 0 if the maximum connection count of the queue manager is used
+	 */
+	public int getPrefetchCount() {
+		return prefetchCount;
+	}
+
+	/**
+	 * Sets the prefetch count
+	 * 
+	 * @param prefetchCount Maximum count of claimed tasks or 0 if the maximum connection count of the queue manager should be used
+	 */
+	public void setPrefetchCount(int prefetchCount) {
+		this.prefetchCount = prefetchCount;
+	}
+
+	/**
+	 * Claimed task, which completed
+	 * 
+	 * @param <T> Task Type
+	 * @param task Task
+	 * @param cancelled True if the task was cancelled and its claim should be released, false if it should be removed from the store
+	 */
+	private record CompletedTask<T>(T task, boolean cancelled) {
+	}
+}
@@ -14,6 +14,51 @@ public interface Restriction {
 	 */
 	public int getMaxConnectionCount();
 
+	/**
+	 * @return Maximum bytes per second or 0 if not limited
+	 */
+	public default long getMaxBytesPerSecond() {
+		return 0;
+	}
+
+	/**
+	 * @return Minimum time in milliseconds between the start of two tasks or 0 if not limited
+	 */
+	public default long getMinRequestInterval() {
+		return 0;
+	}
+
+	/**
+	 * @return Backoff for retries of tasks or null if the default backoff of the queue should be used
+	 */
+	public default RetryBackoff getRetryBackoff() {
+		return null;
+	}
+
+	/**
+	 * @return Weight, which is the count of tasks executed per turn in {@link QueueSchedulingMode#FAIR}
+	 */
+	public default int getWeight() {
+		return 1;
+	}
+
+	/**
+	 * @return Maximum time in milliseconds a task is allowed to execute, before it is cancelled, or 0 if the default timeout of the queue should be used
+	 */
+	public default long getExecutionTimeout() {
+		return 0;
+	}
+
+	/**
+	 * Returns the parent restriction, for example a restriction for a group of hosts. A task is only executed, if the maximum connection count of its
+	 * restriction and of all parent restrictions is not reached. The restriction keys of all restrictions in the chain must be different.
+	 * 
+	 * @return Parent Restriction or null if there is none
+	 */
+	public default Restriction getParentRestriction() {
+		return null;
+	}
+
 	/**
 	 * @return True if is restricted, false otherwise
 	 */
@@ -14,6 +14,36 @@ public abstract class RestrictionBase implements Restriction {
 	 */
 	protected int maxConnectionCount;
 
+	/**
+	 * Max Bytes per Second
+	 */
+	protected long maxBytesPerSecond;
+
+	/**
+	 * Minimum Request Interval in milliseconds
+	 */
+	protected long minRequestInterval = 0;
+
+	/**
+	 * Retry Backoff or null if the default backoff of the queue should be used
+	 */
+	protected RetryBackoff retryBackoff = null;
+
+	/**
+	 * Weight
+	 */
+	protected int weight = 1;
+
+	/**
+	 * Execution Timeout in milliseconds or 0 if the default timeout of the queue should be used
+	 */
+	protected long executionTimeout = 0;
+
+	/**
+	 * Parent Restriction or null if there is none
+	 */
+	protected Restriction parentRestriction = null;
+
 	/**
 	 * Constructor
 	 * 
@@ -21,8 +51,20 @@ public abstract class RestrictionBase implements Restriction {
 	 * @param maxConnectionCount Max Connection Count
 	 */
 	public RestrictionBase(String restrictionKey, int maxConnectionCount) {
+		this(restrictionKey, maxConnectionCount, 0);
+	}
+
+	/**
+	 * Constructor
+	 * 
+	 * @param restrictionKey Restriction Key
+	 * @param maxConnectionCount Max Connection Count
+	 * @param maxBytesPerSecond Max Bytes per Second or 0 if not limited
+	 */
+	public RestrictionBase(String restrictionKey, int maxConnectionCount, long maxBytesPerSecond) {
 		this.restrictionKey = restrictionKey;
 		this.maxConnectionCount = maxConnectionCount;
+		this.maxBytesPerSecond = maxBytesPerSecond;
 	}
 
 	@Override
@@ -44,6 +86,90 @@ public abstract class RestrictionBase implements Restriction {
 		this.maxConnectionCount = maxConnectionCount;
 	}
 
+	@Override
+	public long getMaxBytesPerSecond() {
+		return maxBytesPerSecond;
+	}
+
+	/**
+	 * Sets the maxBytesPerSecond
+	 * 
+	 * @param maxBytesPerSecond maxBytesPerSecond
+	 */
+	protected void setMaxBytesPerSecond(long maxBytesPerSecond) {
+		this.maxBytesPerSecond = maxBytesPerSecond;
+	}
+
+	@Override
+	public long getMinRequestInterval() {
+		return minRequestInterval;
+	}
+
+	/**
+	 * Sets the minRequestInterval
+	 * 
+	 * @param minRequestInterval Minimum time in milliseconds between the start of two tasks or 0 if not limited
+	 */
+	protected void setMinRequestInterval(long minRequestInterval) {
+		this.minRequestInterval = minRequestInterval;
+	}
+
+	@Override
+	public RetryBackoff getRetryBackoff() {
+		return retryBackoff;
+	}
+
+	/**
+	 * Sets the retryBackoff
+	 * 
+	 * @param retryBackoff Retry Backoff or null if the default backoff of the queue should be used
+	 */
+	protected void setRetryBackoff(RetryBackoff retryBackoff) {
+		this.retryBackoff = retryBackoff;
+	}
+
+	@Override
+	public int getWeight() {
+		return weight;
+	}
+
+	/**
+	 * Sets the weight
+	 * 
+	 * @param weight Weight, which is the count of tasks executed per turn in {@link QueueSchedulingMode#FAIR}
+	 */
+	protected void setWeight(int weight) {
+		this.weight = weight;
+	}
+
+	@Override
+	public long getExecutionTimeout() {
+		return executionTimeout;
+	}
+
+	/**
+	 * Sets the executionTimeout
+	 * 
+	 * @param executionTimeout Execution Timeout in milliseconds or 0 if the default timeout of the queue should be used
+	 */
+	protected void setExecutionTimeout(long executionTimeout) {
+		this.executionTimeout = executionTimeout;
+	}
+
+	@Override
+	public Restriction getParentRestriction() {
+		return parentRestriction;
+	}
+
+	/**
+	 * Sets the parentRestriction
+	 * 
+	 * @param parentRestriction Parent Restriction or null if there is none
+	 */
+	protected void setParentRestriction(Restriction parentRestriction) {
+		this.parentRestriction = parentRestriction;
+	}
+
 	@Override
 	public boolean isRestricted() {
 		return maxConnectionCount > 0;
@@ -0,0 +1,91 @@
+package ch.supertomcat.supertomcatutils.queue;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Reference counted counters of executing tasks per restriction key.
+ *
+ * A counter only exists as long as its count is greater than 0. When the last task of a restriction key completed, the counter is removed, so the counters
+ * do not grow with every restriction key ever seen. Counters are created and removed atomically per key by the concurrent map, so reading a count does
+ * not need any lock.
+ */
+public class RestrictionCounters {
+	/**
+	 * Counters by restriction key. Only contains counters with a count greater than 0.
+	 */
+	private final Map<String, AtomicInteger> counters = new ConcurrentHashMap<>();
+
+	/**
+	 * Constructor
+	 */
+	public RestrictionCounters() {
+	}
+
+	/**
+	 * Returns the count of the restriction key
+	 *
+	 * @param restrictionKey Restriction Key
+	 * @return Count or 0 if there is no counter for the restriction key
+	 */
+	public int get(String restrictionKey) {
+		AtomicInteger count = counters.get(restrictionKey);
+		return count != null ? count.get() : 0;
+	}
+
+	/**
+	 * Increments the count of the restriction key. The counter is created if needed.
+	 *
+	 * @param restrictionKey Restriction Key
+	 * @return Count after the increment
+	 */
+	public int increment(String restrictionKey) {
+		return counters.compute(restrictionKey, (k, count) -> {
+			if (count == null) {
+				return new AtomicInteger(1);
+			}
+			count.incrementAndGet();
+			return count;
+		}).get();
+	}
+
+	/**
+	 * Decrements the count of the restriction key. The counter is removed, when the count reaches 0.
+	 *
+	 * @param restrictionKey Restriction Key
+	 * @return Count after the decrement
+	 */
+	public int decrement(String restrictionKey) {
+		AtomicInteger remainingCount = counters.computeIfPresent(restrictionKey, (k, count) -> count.decrementAndGet() > 0 ? count : null);
+		return remainingCount != null ? remainingCount.get() : 0;
+	}
+
+	/**
+	 * Returns the count of restriction keys with a count greater than 0
+	 *
+	 * @return Count of restriction keys
+	 */
+	public int size() {
+		return counters.size();
+	}
+
+	/**
+	 * Returns a copy of the counts
+	 *
+	 * @return Counts by restriction key
+	 */
+	public Map<String, Integer> getCounts() {
+		Map<String, Integer> counts = new HashMap<>();
+		counters.forEach((restrictionKey, count) -> counts.put(restrictionKey, count.get()));
+		return counts;
+	}
+
+	/**
+	 * Removes all counters
+	 */
+	public void clear() {
+		counters.clear();
+	}
+}
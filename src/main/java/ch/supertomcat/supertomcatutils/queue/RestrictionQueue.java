@@ -0,0 +1,681 @@
+package ch.supertomcat.supertomcatutils.queue;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.Objects;
+import java.util.PriorityQueue;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+
+/**
+ * Queue which holds the tasks in buckets per restriction key.
+ * 
+ * Tasks are ordered by their rank, which is the time the task was added minus a bonus for the priority of the task. A task with a higher priority
+ * is therefore executed before tasks with lower priority, which were added less than the priority aging time per priority level before. Tasks with lower
+ * priority, which are waiting longer than that, are executed first, so they can not starve. Tasks with the same priority are executed in the order they
+ * were added.
+ * 
+ * Buckets are heaps ordered by the rank of the tasks. Buckets, which might be able to execute a task, are held in a ready set. In
+ * {@link QueueSchedulingMode#ORDERED} the ready set is ordered by the rank of the first task in the bucket. In {@link QueueSchedulingMode#FAIR} the ready set
+ * is a ring, in which every bucket executes as many tasks as its weight, before it is moved to the end of the ring.
+ * Buckets, which reached the maximum connection count, are blocked and are not looked at again, until they are unblocked, for example because a task for
+ * the restriction key completed. Buckets, which are blocked by a parent restriction key, are registered as waiting for that key and are unblocked together
+ * with it. Buckets, which are not allowed to execute a task before a specific time, are delayed and are only added to the ready
+ * buckets again when they are due. This way the scheduler only has to look at buckets, which are able to execute tasks, instead of the whole queue.
+ * 
+ * Additionally all tasks are held in a hash index, so that checking if a task is already contained in the queue does not depend on the size of the queue.
+ * Tasks must therefore implement equals and hashCode consistently.
+ * 
+ * This class is not thread-safe. Access must be synchronized by the caller.
+ * 
+ * @param <T> Task Type
+ */
+public class RestrictionQueue<T> {
+	/**
+	 * Default Priority Aging Time in milliseconds
+	 */
+	public static final long DEFAULT_PRIORITY_AGING_TIME = 60000;
+
+	/**
+	 * Comparator for entries
+	 */
+	private static final Comparator<Entry<?>> ENTRY_COMPARATOR = Comparator.<Entry<?>>comparingLong(Entry::rank).thenComparingLong(Entry::sequence);
+
+	/**
+	 * Buckets by restriction key
+	 */
+	private final Map<String, Bucket<T>> buckets = new HashMap<>();
+
+	/**
+	 * Index of all queued tasks
+	 */
+	private final Map<T, Entry<T>> index = new HashMap<>();
+
+	/**
+	 * Buckets which might be able to execute tasks, ordered by their first task, used in {@link QueueSchedulingMode#ORDERED}
+	 */
+	private final NavigableSet<Bucket<T>> readyBuckets = new TreeSet<>((b1, b2) -> ENTRY_COMPARATOR.compare(b1.entries.peek(), b2.entries.peek()));
+
+	/**
+	 * Buckets which might be able to execute tasks in the order they get their turn, used in {@link QueueSchedulingMode#FAIR}
+	 */
+	private final Deque<Bucket<T>> readyBucketsRing = new ArrayDeque<>();
+
+	/**
+	 * Buckets which are blocked by the maximum connection count of a parent restriction by the restriction key of the parent restriction
+	 */
+	private final Map<String, List<Bucket<T>>> waitingBuckets = new HashMap<>();
+
+	/**
+	 * Scheduling Mode
+	 */
+	private QueueSchedulingMode schedulingMode = QueueSchedulingMode.ORDERED;
+
+	/**
+	 * Delayed buckets, ordered by the time they are due
+	 */
+	private final PriorityQueue<Bucket<T>> delayedBuckets = new PriorityQueue<>(Comparator.comparingLong(Bucket::getDueTime));
+
+	/**
+	 * Time in milliseconds a task has to wait in the queue, to be executed before a task added later with a priority one level higher
+	 */
+	private long priorityAgingTime = DEFAULT_PRIORITY_AGING_TIME;
+
+	/**
+	 * Sequence for the next added task
+	 */
+	private long nextSequence = 0;
+
+	/**
+	 * Count of tasks in all buckets
+	 */
+	private int size = 0;
+
+	/**
+	 * Constructor
+	 */
+	public RestrictionQueue() {
+	}
+
+	/**
+	 * Returns the priorityAgingTime
+	 * 
+	 * @return priorityAgingTime
+	 */
+	public long getPriorityAgingTime() {
+		return priorityAgingTime;
+	}
+
+	/**
+	 * Sets the priorityAgingTime. Only applies to tasks added afterwards.
+	 * 
+	 * @param priorityAgingTime Time in milliseconds a task has to wait in the queue, to be executed before a task added later with a priority one level higher
+	 */
+	public void setPriorityAgingTime(long priorityAgingTime) {
+		this.priorityAgingTime = priorityAgingTime;
+	}
+
+	/**
+	 * Returns the schedulingMode
+	 * 
+	 * @return schedulingMode
+	 */
+	public QueueSchedulingMode getSchedulingMode() {
+		return schedulingMode;
+	}
+
+	/**
+	 * Sets the schedulingMode
+	 * 
+	 * @param schedulingMode schedulingMode
+	 */
+	public void setSchedulingMode(QueueSchedulingMode schedulingMode) {
+		if (this.schedulingMode == schedulingMode) {
+			return;
+		}
+		List<Bucket<T>> ready = new ArrayList<>(schedulingMode == QueueSchedulingMode.FAIR ? readyBuckets : readyBucketsRing);
+		readyBuckets.clear();
+		readyBucketsRing.clear();
+		this.schedulingMode = Objects.requireNonNull(schedulingMode);
+		for (Bucket<T> bucket : ready) {
+			// Buckets of removed restriction keys might still be contained in the ring, so they are skipped here
+			if (bucket.ready && buckets.get(bucket.restrictionKey) == bucket && !bucket.entries.isEmpty()) {
+				bucket.deficit = 0;
+				addReady(bucket);
+			}
+		}
+	}
+
+	/**
+	 * Add task with default priority to the bucket of the given restriction key, if it is not already contained in the queue
+	 * 
+	 * @param restrictionKey Restriction Key
+	 * @param task Task
+	 * @return True if the task was added, false if it was already contained in the queue
+	 */
+	public boolean add(String restrictionKey, T task) {
+		return add(restrictionKey, task, Prioritized.DEFAULT_PRIORITY);
+	}
+
+	/**
+	 * Add task to the bucket of the given restriction key, if it is not already contained in the queue
+	 * 
+	 * @param restrictionKey Restriction Key
+	 * @param task Task
+	 * @param priority Priority (Higher value means higher priority)
+	 * @return True if the task was added, false if it was already contained in the queue
+	 */
+	public boolean add(String restrictionKey, T task, int priority) {
+		return add(restrictionKey, task, priority, 1);
+	}
+
+	/**
+	 * Add task to the bucket of the given restriction key, if it is not already contained in the queue
+	 * 
+	 * @param restrictionKey Restriction Key
+	 * @param task Task
+	 * @param priority Priority (Higher value means higher priority)
+	 * @param weight Weight of the restriction key in {@link QueueSchedulingMode#FAIR}
+	 * @return True if the task was added, false if it was already contained in the queue
+	 */
+	public boolean add(String restrictionKey, T task, int priority, int weight) {
+		if (index.containsKey(task)) {
+			return false;
+		}
+		long now = System.nanoTime();
+		long rank = TimeUnit.NANOSECONDS.toMillis(now) - priority * priorityAgingTime;
+		Entry<T> entry = new Entry<>(task, rank, nextSequence++, now);
+		index.put(task, entry);
+		Bucket<T> bucket = buckets.computeIfAbsent(restrictionKey, Bucket::new);
+		bucket.weight = Math.max(1, weight);
+		if (bucket.ready && schedulingMode == QueueSchedulingMode.ORDERED && ENTRY_COMPARATOR.compare(entry, bucket.entries.peek()) < 0) {
+			// The first task of the bucket changes, so the bucket has to be removed and added again to keep the order of the ready buckets
+			readyBuckets.remove(bucket);
+			bucket.entries.add(entry);
+			readyBuckets.add(bucket);
+		} else {
+			bucket.entries.add(entry);
+		}
+		size++;
+		if (!bucket.ready && !bucket.blocked && !bucket.delayed) {
+			addReady(bucket);
+		}
+		return true;
+	}
+
+	/**
+	 * @param task Task
+	 * @return True if the task is contained in the queue, false otherwise
+	 */
+	public boolean contains(T task) {
+		return index.containsKey(task);
+	}
+
+	/**
+	 * @return Count of tasks
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * @return True if queue is empty, false otherwise
+	 */
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	/**
+	 * @param restrictionKey Restriction Key
+	 * @return Count of tasks for the given restriction key
+	 */
+	public int size(String restrictionKey) {
+		Bucket<T> bucket = buckets.get(restrictionKey);
+		return bucket != null ? bucket.entries.size() : 0;
+	}
+
+	/**
+	 * @return Restriction keys, which have tasks in the queue
+	 */
+	public List<String> getRestrictionKeys() {
+		return new ArrayList<>(buckets.keySet());
+	}
+
+	/**
+	 * Returns all tasks in the order they would be executed, if there were no restrictions
+	 * 
+	 * @return Tasks
+	 */
+	public List<T> getTasks() {
+		List<Entry<T>> entries = new ArrayList<>(size);
+		for (Bucket<T> bucket : buckets.values()) {
+			entries.addAll(bucket.entries);
+		}
+		entries.sort(ENTRY_COMPARATOR);
+		List<T> tasks = new ArrayList<>(entries.size());
+		for (Entry<T> entry : entries) {
+			tasks.add(entry.task);
+		}
+		return tasks;
+	}
+
+	/**
+	 * @param restrictionKey Restriction Key
+	 * @return Tasks of the restriction key in the order they will be executed
+	 */
+	public List<T> getTasks(String restrictionKey) {
+		return copyTasks(restrictionKey).getTasks();
+	}
+
+	/**
+	 * Returns a copy of the tasks of the restriction key. Taking the copy does not sort the tasks, so the copy can be sorted by
+	 * {@link QueuedTasks#getTasks()} after the lock of the queue was released.
+	 * 
+	 * @param restrictionKey Restriction Key
+	 * @return Copy of the tasks of the restriction key
+	 */
+	public QueuedTasks<T> copyTasks(String restrictionKey) {
+		Bucket<T> bucket = buckets.get(restrictionKey);
+		return new QueuedTasks<>(bucket != null ? new ArrayList<>(bucket.entries) : new ArrayList<>());
+	}
+
+	/**
+	 * Remove all tasks of the restriction key
+	 * 
+	 * @param restrictionKey Restriction Key
+	 * @return Removed tasks in the order they would have been executed
+	 */
+	public List<T> remove(String restrictionKey) {
+		Bucket<T> bucket = buckets.get(restrictionKey);
+		if (bucket == null) {
+			return new ArrayList<>();
+		}
+		List<T> tasks = getTasks(restrictionKey);
+		for (T task : tasks) {
+			index.remove(task);
+		}
+		size -= tasks.size();
+		removeBucket(bucket);
+		bucket.entries.clear();
+		return tasks;
+	}
+
+	/**
+	 * Remove all tasks matching the predicate
+	 * 
+	 * @param filter Predicate, which returns true for tasks to be removed
+	 * @return Removed tasks
+	 */
+	public List<T> removeIf(Predicate<? super T> filter) {
+		List<T> removedTasks = new ArrayList<>();
+		for (Bucket<T> bucket : new ArrayList<>(buckets.values())) {
+			boolean orderedReady = bucket.ready && schedulingMode == QueueSchedulingMode.ORDERED;
+			if (orderedReady) {
+				// The first task of the bucket might change, so the bucket has to be removed and added again to keep the order of the ready buckets
+				readyBuckets.remove(bucket);
+			}
+			bucket.entries.removeIf(entry -> {
+				if (filter.test(entry.task)) {
+					removedTasks.add(entry.task);
+					index.remove(entry.task);
+					size--;
+					return true;
+				}
+				return false;
+			});
+			if (bucket.entries.isEmpty()) {
+				bucket.ready = false;
+				removeBucket(bucket);
+			} else if (orderedReady) {
+				readyBuckets.add(bucket);
+			}
+		}
+		return removedTasks;
+	}
+
+	/**
+	 * Remove the bucket. The bucket is removed from the ready set in {@link QueueSchedulingMode#ORDERED}. Everywhere else it is skipped later, because it is
+	 * not contained in the buckets anymore.
+	 * 
+	 * @param bucket Bucket
+	 */
+	private void removeBucket(Bucket<T> bucket) {
+		if (bucket.ready && schedulingMode == QueueSchedulingMode.ORDERED) {
+			readyBuckets.remove(bucket);
+		}
+		bucket.ready = false;
+		buckets.remove(bucket.restrictionKey);
+	}
+
+	/**
+	 * Remove all tasks
+	 */
+	public void clear() {
+		buckets.clear();
+		index.clear();
+		readyBuckets.clear();
+		readyBucketsRing.clear();
+		delayedBuckets.clear();
+		waitingBuckets.clear();
+		size = 0;
+	}
+
+	/**
+	 * Removes and returns the ready bucket with the first task. The returned bucket must be passed to {@link #pollTask(Bucket)} or
+	 * {@link #block(Bucket)}.
+	 * 
+	 * @return Ready bucket or null if there is no ready bucket
+	 */
+	Bucket<T> pollReadyBucket() {
+		Bucket<T> bucket;
+		if (schedulingMode == QueueSchedulingMode.FAIR) {
+			do {
+				bucket = readyBucketsRing.pollFirst();
+				// Buckets of removed restriction keys are not removed from the ring directly, so they are skipped here
+			} while (bucket != null && buckets.get(bucket.restrictionKey) != bucket);
+			if (bucket != null && bucket.deficit <= 0) {
+				// Bucket gets a new turn
+				bucket.deficit += bucket.weight;
+			}
+		} else {
+			bucket = readyBuckets.pollFirst();
+		}
+		if (bucket != null) {
+			bucket.ready = false;
+		}
+		return bucket;
+	}
+
+	/**
+	 * Removes the first task of the bucket. If the bucket has more tasks it is added to the ready buckets again, otherwise it is removed.
+	 * 
+	 * @param bucket Bucket returned by {@link #pollReadyBucket()}
+	 * @return Task
+	 */
+	T pollTask(Bucket<T> bucket) {
+		Entry<T> entry = bucket.entries.poll();
+		index.remove(entry.task);
+		size--;
+		if (bucket.entries.isEmpty()) {
+			// Only removed if it was not replaced by a new bucket for the restriction key in the meantime
+			buckets.remove(bucket.restrictionKey, bucket);
+		} else if (schedulingMode == QueueSchedulingMode.FAIR) {
+			bucket.ready = true;
+			bucket.deficit--;
+			if (bucket.deficit > 0) {
+				// Bucket has not used its whole turn
+				readyBucketsRing.addFirst(bucket);
+			} else {
+				readyBucketsRing.addLast(bucket);
+			}
+		} else {
+			bucket.ready = true;
+			readyBuckets.add(bucket);
+		}
+		return entry.task;
+	}
+
+	/**
+	 * Blocks the bucket, because no more tasks are allowed to be executed for the restriction key at the moment
+	 * 
+	 * @param bucket Bucket returned by {@link #pollReadyBucket()}
+	 */
+	void block(Bucket<T> bucket) {
+		bucket.blocked = true;
+		bucket.deficit = 0;
+	}
+
+	/**
+	 * Blocks the bucket, because no more tasks are allowed to be executed for a parent restriction key at the moment. The bucket is unblocked, when the
+	 * parent restriction key is unblocked.
+	 * 
+	 * @param bucket Bucket returned by {@link #pollReadyBucket()}
+	 * @param blockingRestrictionKey Restriction Key of the parent restriction
+	 */
+	void block(Bucket<T> bucket, String blockingRestrictionKey) {
+		block(bucket);
+		waitingBuckets.computeIfAbsent(blockingRestrictionKey, k -> new ArrayList<>()).add(bucket);
+	}
+
+	/**
+	 * Delays the bucket, because no tasks are allowed to be executed for the restriction key before the given time
+	 * 
+	 * @param bucket Bucket returned by {@link #pollReadyBucket()}
+	 * @param dueTime Time in nanoseconds as returned by {@link System#nanoTime()} when the bucket is due
+	 */
+	void delay(Bucket<T> bucket, long dueTime) {
+		bucket.delayed = true;
+		bucket.deficit = 0;
+		bucket.dueTime = dueTime;
+		delayedBuckets.add(bucket);
+	}
+
+	/**
+	 * @return True if there are delayed buckets, false otherwise
+	 */
+	public boolean hasDelayedBuckets() {
+		return !delayedBuckets.isEmpty();
+	}
+
+	/**
+	 * @return Time in nanoseconds as returned by {@link System#nanoTime()} when the next delayed bucket is due
+	 * @throws java.util.NoSuchElementException if there are no delayed buckets
+	 */
+	public long getNextDueTime() {
+		return delayedBuckets.element().dueTime;
+	}
+
+	/**
+	 * Adds all delayed buckets, which are due, to the ready buckets again
+	 * 
+	 * @param now Current time in nanoseconds as returned by {@link System#nanoTime()}
+	 */
+	public void releaseDueBuckets(long now) {
+		while (!delayedBuckets.isEmpty() && delayedBuckets.peek().dueTime - now <= 0) {
+			Bucket<T> bucket = delayedBuckets.poll();
+			bucket.delayed = false;
+			if (buckets.get(bucket.restrictionKey) == bucket && !bucket.blocked) {
+				addReady(bucket);
+			}
+		}
+	}
+
+	/**
+	 * Unblocks the bucket of the given restriction key and all buckets waiting for the restriction key as parent restriction key, so that they are looked at
+	 * again by the scheduler
+	 * 
+	 * @param restrictionKey Restriction Key
+	 */
+	public void unblock(String restrictionKey) {
+		Bucket<T> bucket = buckets.get(restrictionKey);
+		if (bucket != null) {
+			unblock(bucket);
+		}
+		if (!waitingBuckets.isEmpty()) {
+			List<Bucket<T>> waiting = waitingBuckets.remove(restrictionKey);
+			if (waiting != null) {
+				for (Bucket<T> waitingBucket : waiting) {
+					if (buckets.get(waitingBucket.restrictionKey) == waitingBucket) {
+						unblock(waitingBucket);
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Unblocks all buckets and releases all delayed buckets, for example because the restrictions were changed
+	 */
+	public void unblockAll() {
+		for (Bucket<T> bucket : delayedBuckets) {
+			bucket.delayed = false;
+		}
+		delayedBuckets.clear();
+		waitingBuckets.clear();
+		for (Bucket<T> bucket : buckets.values()) {
+			unblock(bucket);
+		}
+	}
+
+	/**
+	 * @param bucket Bucket
+	 */
+	private void unblock(Bucket<T> bucket) {
+		bucket.blocked = false;
+		if (!bucket.ready && !bucket.delayed) {
+			addReady(bucket);
+		}
+	}
+
+	/**
+	 * Add bucket to the ready buckets
+	 * 
+	 * @param bucket Bucket, which is not ready
+	 */
+	private void addReady(Bucket<T> bucket) {
+		bucket.ready = true;
+		if (schedulingMode == QueueSchedulingMode.FAIR) {
+			readyBucketsRing.addLast(bucket);
+		} else {
+			readyBuckets.add(bucket);
+		}
+	}
+
+	/**
+	 * Queue Entry
+	 * 
+	 * @param <T> Task Type
+	 * @param task Task
+	 * @param rank Rank (Time in milliseconds when the task was added minus the priority bonus)
+	 * @param sequence Sequence
+	 * @param enqueueTime Time in nanoseconds as returned by {@link System#nanoTime()} when the task was added
+	 */
+	private record Entry<T>(T task, long rank, long sequence, long enqueueTime) {
+	}
+
+	/**
+	 * Copy of queued tasks, which are sorted when they are requested
+	 * 
+	 * @param <T> Task Type
+	 */
+	public static final class QueuedTasks<T> {
+		/**
+		 * Entries
+		 */
+		private final List<Entry<T>> entries;
+
+		/**
+		 * Constructor
+		 * 
+		 * @param entries Entries
+		 */
+		private QueuedTasks(List<Entry<T>> entries) {
+			this.entries = entries;
+		}
+
+		/**
+		 * @return Tasks in the order they will be executed
+		 */
+		public List<T> getTasks() {
+			entries.sort(ENTRY_COMPARATOR);
+			List<T> tasks = new ArrayList<>(entries.size());
+			for (Entry<T> entry : entries) {
+				tasks.add(entry.task);
+			}
+			return tasks;
+		}
+	}
+
+	/**
+	 * Bucket which contains the tasks of a restriction key
+	 * 
+	 * @param <T> Task Type
+	 */
+	static final class Bucket<T> {
+		/**
+		 * Restriction Key
+		 */
+		private final String restrictionKey;
+
+		/**
+		 * Entries
+		 */
+		private final PriorityQueue<Entry<T>> entries = new PriorityQueue<>(ENTRY_COMPARATOR);
+
+		/**
+		 * Flag if bucket is in the ready buckets
+		 */
+		private boolean ready = false;
+
+		/**
+		 * Flag if bucket is blocked
+		 */
+		private boolean blocked = false;
+
+		/**
+		 * Weight in {@link QueueSchedulingMode#FAIR}
+		 */
+		private int weight = 1;
+
+		/**
+		 * Count of tasks the bucket is still allowed to execute in its current turn in {@link QueueSchedulingMode#FAIR}
+		 */
+		private int deficit = 0;
+
+		/**
+		 * Flag if bucket is delayed
+		 */
+		private boolean delayed = false;
+
+		/**
+		 * Time in nanoseconds when the delayed bucket is due
+		 */
+		private long dueTime = 0;
+
+		/**
+		 * Constructor
+		 * 
+		 * @param restrictionKey Restriction Key
+		 */
+		private Bucket(String restrictionKey) {
+			this.restrictionKey = restrictionKey;
+		}
+
+		/**
+		 * Returns the restrictionKey
+		 * 
+		 * @return restrictionKey
+		 */
+		String getRestrictionKey() {
+			return restrictionKey;
+		}
+
+		/**
+		 * @return First task
+		 */
+		T peekTask() {
+			return entries.peek().task;
+		}
+
+		/**
+		 * @return Time in nanoseconds as returned by {@link System#nanoTime()} when the first task was added
+		 */
+		long peekEnqueueTime() {
+			return entries.peek().enqueueTime;
+		}
+
+		/**
+		 * @return Time in nanoseconds when the delayed bucket is due
+		 */
+		private long getDueTime() {
+			return dueTime;
+		}
+	}
+}
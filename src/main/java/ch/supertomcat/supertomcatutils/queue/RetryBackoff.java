@@ -0,0 +1,107 @@
+package ch.supertomcat.supertomcatutils.queue;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Exponential backoff with jitter for retries of tasks
+ */
+public class RetryBackoff {
+	/**
+	 * Default Retry Backoff: 1 second initial delay, doubled for every retry up to 5 minutes, with 20% jitter
+	 */
+	public static final RetryBackoff DEFAULT = new RetryBackoff(1000, 300000, 2.0, 0.2);
+
+	/**
+	 * Initial Delay in milliseconds
+	 */
+	private final long initialDelay;
+
+	/**
+	 * Maximum Delay in milliseconds
+	 */
+	private final long maxDelay;
+
+	/**
+	 * Multiplier
+	 */
+	private final double multiplier;
+
+	/**
+	 * Jitter
+	 */
+	private final double jitter;
+
+	/**
+	 * Constructor
+	 * 
+	 * @param initialDelay Delay in milliseconds for the first retry
+	 * @param maxDelay Maximum delay in milliseconds
+	 * @param multiplier Factor by which the delay is multiplied for every further retry
+	 * @param jitter Factor between 0 and 1 by which the delay is randomly increased or decreased, so that retries of many tasks are spread
+	 */
+	public RetryBackoff(long initialDelay, long maxDelay, double multiplier, double jitter) {
+		if (initialDelay < 0 || maxDelay < initialDelay) {
+			throw new IllegalArgumentException("Invalid delays: initialDelay=" + initialDelay + ", maxDelay=" + maxDelay);
+		}
+		if (multiplier < 1) {
+			throw new IllegalArgumentException("Multiplier must not be less than 1: " + multiplier);
+		}
+		if (jitter < 0 || jitter > 1) {
+			throw new IllegalArgumentException("Jitter must be between 0 and 1: " + jitter);
+		}
+		this.initialDelay = initialDelay;
+		this.maxDelay = maxDelay;
+		this.multiplier = multiplier;
+		this.jitter = jitter;
+	}
+
+	/**
+	 * Returns the initialDelay
+	 * 
+	 * @return initialDelay
+	 */
+	public long getInitialDelay() {
+		return initialDelay;
+	}
+
+	/**
+	 * Returns the maxDelay
+	 * 
+	 * @return maxDelay
+	 */
+	public long getMaxDelay() {
+		return maxDelay;
+	}
+
+	/**
+	 * Returns the multiplier
+	 * 
+	 * @return multiplier
+	 */
+	public double getMultiplier() {
+		return multiplier;
+	}
+
+	/**
+	 * Returns the jitter
+	 * 
+	 * @return jitter
+	 */
+	public double getJitter() {
+		return jitter;
+	}
+
+	/**
+	 * Returns the delay for the given retry attempt
+	 * 
+	 * @param attempt Retry attempt, starting with 1
+	 * @return Delay in milliseconds
+	 */
+	public long getDelay(int attempt) {
+		double delay = Math.min(maxDelay, initialDelay * Math.pow(multiplier, Math.max(0, attempt - 1)));
+		if (jitter > 0) {
+			delay *= 1 + jitter * (ThreadLocalRandom.current().nextDouble() * 2 - 1);
+		}
+		return (long)Math.max(0, delay);
+	}
+}
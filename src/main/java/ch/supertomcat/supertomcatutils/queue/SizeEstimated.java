@@ -0,0 +1,11 @@
+package ch.supertomcat.supertomcatutils.queue;
+
+/**
+ * Interface for tasks, which can estimate how much memory they use while they are in the queue
+ */
+public interface SizeEstimated {
+	/**
+	 * @return Estimated size in bytes
+	 */
+	public long getEstimatedSize();
+}
@@ -0,0 +1,30 @@
+package ch.supertomcat.supertomcatutils.queue;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Futures of tasks, which were submitted together
+ * 
+ * @param <R> Task Return Type
+ * @param futures Futures of the tasks in the same order as the tasks were submitted
+ * @param allCompleted Future, which is completed with the results of all tasks in the same order as the tasks were submitted, when all tasks completed
+ *            successfully. If a task failed or was cancelled, this future is completed exceptionally, after all tasks completed.
+ */
+public record TaskBatch<R>(List<CompletableFuture<R>> futures, CompletableFuture<List<R>> allCompleted) {
+	/**
+	 * Constructor
+	 * 
+	 * @param futures Futures of the tasks in the same order as the tasks were submitted
+	 */
+	public TaskBatch(List<CompletableFuture<R>> futures) {
+		this(futures, CompletableFuture.allOf(futures.toArray(CompletableFuture[]::new)).thenApply(v -> futures.stream().map(CompletableFuture::join).toList()));
+	}
+
+	/**
+	 * @return Count of tasks
+	 */
+	public int size() {
+		return futures.size();
+	}
+}
@@ -0,0 +1,289 @@
+package ch.supertomcat.supertomcatutils.queue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Hashed timer wheel, which executes timeouts on a single thread.
+ * 
+ * The wheel consists of slots, which each cover one tick. A timeout is put into the slot of the tick at which it expires. If the timeout is more than one
+ * revolution of the wheel away, the count of remaining revolutions is stored with the timeout. On every tick the thread only looks at the timeouts in the
+ * slot of the tick, so scheduling and cancelling a timeout is O(1) and the cost of a tick does not depend on the count of timeouts in other slots.
+ * 
+ * Timeouts are executed at most one tick after their deadline. Timeouts are executed on the thread of the wheel, so they must be short. The thread is only
+ * created when the first timeout is scheduled after the wheel was started, so a wheel, which is never used, does not tick.
+ */
+public class TimerWheel {
+	/**
+	 * Logger
+	 */
+	private final Logger logger = LoggerFactory.getLogger(getClass());
+
+	/**
+	 * Thread Name Prefix
+	 */
+	private final String threadNamePrefix;
+
+	/**
+	 * Duration of a tick in nanoseconds
+	 */
+	private final long tickDuration;
+
+	/**
+	 * Slots
+	 */
+	private final List<List<Timeout>> wheel;
+
+	/**
+	 * Mask for the index of the slot
+	 */
+	private final int mask;
+
+	/**
+	 * Timeouts, which were scheduled, but not yet put into their slot
+	 */
+	private final Queue<Timeout> newTimeouts = new ConcurrentLinkedQueue<>();
+
+	/**
+	 * Time in nanoseconds as returned by {@link System#nanoTime()} when the wheel was started
+	 */
+	private volatile long startTime = 0;
+
+	/**
+	 * Current tick. Only accessed by the thread of the wheel.
+	 */
+	private long tick = 0;
+
+	/**
+	 * Thread or null if not created yet
+	 */
+	private volatile Thread thread = null;
+
+	/**
+	 * Flag if the wheel was started
+	 */
+	private boolean started = false;
+
+	/**
+	 * Stop Flag
+	 */
+	private volatile boolean stop = false;
+
+	/**
+	 * Constructor
+	 * 
+	 * @param threadNamePrefix Thread Name Prefix
+	 * @param tickDuration Duration of a tick
+	 * @param unit Unit of the duration
+	 * @param slotCount Count of slots, which is rounded up to the next power of two
+	 */
+	public TimerWheel(String threadNamePrefix, long tickDuration, TimeUnit unit, int slotCount) {
+		if (tickDuration <= 0) {
+			throw new IllegalArgumentException("Tick duration must be greater than 0: " + tickDuration);
+		}
+		if (slotCount <= 0 || slotCount > (1 << 20)) {
+			throw new IllegalArgumentException("Slot count must be between 1 and " + (1 << 20) + ": " + slotCount);
+		}
+		this.threadNamePrefix = threadNamePrefix;
+		this.tickDuration = unit.toNanos(tickDuration);
+		int normalizedSlotCount = Integer.highestOneBit(slotCount);
+		if (normalizedSlotCount < slotCount) {
+			normalizedSlotCount <<= 1;
+		}
+		this.wheel = new ArrayList<>(normalizedSlotCount);
+		for (int i = 0; i < normalizedSlotCount; i++) {
+			wheel.add(new ArrayList<>());
+		}
+		this.mask = normalizedSlotCount - 1;
+	}
+
+	/**
+	 * Start the wheel. The thread of the wheel is created when the first timeout is scheduled.
+	 */
+	public synchronized void start() {
+		started = true;
+		if (!newTimeouts.isEmpty()) {
+			startThread();
+		}
+	}
+
+	/**
+	 * Create the thread of the wheel, if the wheel was started and the thread was not created yet
+	 */
+	private synchronized void startThread() {
+		if (!started || thread != null) {
+			return;
+		}
+		stop = false;
+		tick = 0;
+		startTime = System.nanoTime();
+		thread = new Thread(this::run);
+		thread.setName(threadNamePrefix + thread.threadId());
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	/**
+	 * Stop the thread of the wheel. Timeouts, which did not expire yet, are discarded.
+	 */
+	public synchronized void stop() {
+		started = false;
+		if (thread == null) {
+			newTimeouts.clear();
+			return;
+		}
+		stop = true;
+		LockSupport.unpark(thread);
+		try {
+			thread.join();
+		} catch (InterruptedException e) {
+			logger.error("Wait for timer wheel thread to finish was interrupted", e);
+			Thread.currentThread().interrupt();
+		}
+		thread = null;
+		newTimeouts.clear();
+		for (List<Timeout> slot : wheel) {
+			slot.clear();
+		}
+	}
+
+	/**
+	 * Schedule a timeout
+	 * 
+	 * @param task Task, which is executed when the timeout expires
+	 * @param delay Delay
+	 * @param unit Unit of the delay
+	 * @return Timeout, which can be used to cancel the timeout
+	 */
+	public Timeout schedule(Runnable task, long delay, TimeUnit unit) {
+		Timeout timeout = new Timeout(task, System.nanoTime() + unit.toNanos(delay));
+		newTimeouts.add(timeout);
+		if (thread == null) {
+			startThread();
+		}
+		return timeout;
+	}
+
+	/**
+	 * @return True if the thread of the wheel is running, false otherwise
+	 */
+	public boolean isThreadRunning() {
+		return thread != null;
+	}
+
+	/**
+	 * Thread of the wheel
+	 */
+	private void run() {
+		while (!stop) {
+			long deadline = startTime + (tick + 1) * tickDuration;
+			long sleepTime = deadline - System.nanoTime();
+			if (sleepTime > 0) {
+				LockSupport.parkNanos(this, sleepTime);
+				continue;
+			}
+			transferNewTimeouts();
+			expireTimeouts(wheel.get((int)(tick & mask)));
+			tick++;
+		}
+	}
+
+	/**
+	 * Put new timeouts into their slot
+	 */
+	private void transferNewTimeouts() {
+		Timeout timeout;
+		while ((timeout = newTimeouts.poll()) != null) {
+			if (timeout.cancelled) {
+				continue;
+			}
+			long expireTick = Math.max(tick, (timeout.deadline - startTime) / tickDuration);
+			timeout.remainingRounds = (expireTick - tick) / wheel.size();
+			wheel.get((int)(expireTick & mask)).add(timeout);
+		}
+	}
+
+	/**
+	 * Execute timeouts of the slot, which expire in this round
+	 * 
+	 * @param slot Slot
+	 */
+	private void expireTimeouts(List<Timeout> slot) {
+		List<Timeout> expiredTimeouts = new ArrayList<>();
+		slot.removeIf(timeout -> {
+			if (timeout.cancelled) {
+				return true;
+			}
+			if (timeout.remainingRounds <= 0) {
+				expiredTimeouts.add(timeout);
+				return true;
+			}
+			timeout.remainingRounds--;
+			return false;
+		});
+		for (Timeout timeout : expiredTimeouts) {
+			try {
+				timeout.task.run();
+			} catch (Exception e) {
+				logger.error("Timeout task failed", e);
+			}
+		}
+	}
+
+	/**
+	 * Timeout
+	 */
+	public static final class Timeout {
+		/**
+		 * Task
+		 */
+		private final Runnable task;
+
+		/**
+		 * Deadline in nanoseconds as returned by {@link System#nanoTime()}
+		 */
+		private final long deadline;
+
+		/**
+		 * Remaining revolutions of the wheel. Only accessed by the thread of the wheel.
+		 */
+		private long remainingRounds = 0;
+
+		/**
+		 * Flag if timeout was cancelled
+		 */
+		private volatile boolean cancelled = false;
+
+		/**
+		 * Constructor
+		 * 
+		 * @param task Task
+		 * @param deadline Deadline in nanoseconds as returned by {@link System#nanoTime()}
+		 */
+		private Timeout(Runnable task, long deadline) {
+			this.task = task;
+			this.deadline = deadline;
+		}
+
+		/**
+		 * Cancel the timeout. The cancelled timeout is removed when the wheel reaches its slot.
+		 */
+		public void cancel() {
+			cancelled = true;
+		}
+
+		/**
+		 * @return True if timeout was cancelled, false otherwise
+		 */
+		public boolean isCancelled() {
+			return cancelled;
+		}
+	}
+}
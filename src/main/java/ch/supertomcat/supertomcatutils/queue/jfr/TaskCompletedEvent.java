@@ -0,0 +1,44 @@
+package ch.supertomcat.supertomcatutils.queue.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * JFR Event: Task completed, failed or was cancelled while executing
+ */
+@Name("ch.supertomcat.supertomcatutils.queue.TaskCompleted")
+@Label("Task Completed")
+@Category({ "SupertomcatUtils", "Queue" })
+@Description("Task completed, failed or was cancelled while executing")
+@StackTrace(false)
+public class TaskCompletedEvent extends Event {
+	/**
+	 * Task
+	 */
+	@Label("Task")
+	public String task;
+
+	/**
+	 * Restriction Key
+	 */
+	@Label("Restriction Key")
+	public String restrictionKey;
+
+	/**
+	 * State of the future of the task
+	 */
+	@Label("State")
+	public String state;
+
+	/**
+	 * Time the task was executing
+	 */
+	@Label("Execution Time")
+	@Timespan(Timespan.NANOSECONDS)
+	public long executionTime;
+}
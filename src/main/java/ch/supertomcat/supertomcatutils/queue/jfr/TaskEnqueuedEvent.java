@@ -0,0 +1,42 @@
+package ch.supertomcat.supertomcatutils.queue.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * JFR Event: Task was added to the queue
+ */
+@Name("ch.supertomcat.supertomcatutils.queue.TaskEnqueued")
+@Label("Task Enqueued")
+@Category({ "SupertomcatUtils", "Queue" })
+@Description("Task was added to the queue")
+@StackTrace(false)
+public class TaskEnqueuedEvent extends Event {
+	/**
+	 * Task
+	 */
+	@Label("Task")
+	public String task;
+
+	/**
+	 * Restriction Key
+	 */
+	@Label("Restriction Key")
+	public String restrictionKey;
+
+	/**
+	 * Priority
+	 */
+	@Label("Priority")
+	public int priority;
+
+	/**
+	 * Count of tasks in the queue
+	 */
+	@Label("Queue Size")
+	public int queueSize;
+}
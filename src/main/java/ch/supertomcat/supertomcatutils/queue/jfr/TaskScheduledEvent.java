@@ -0,0 +1,44 @@
+package ch.supertomcat.supertomcatutils.queue.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * JFR Event: Task was removed from the queue and submitted for execution
+ */
+@Name("ch.supertomcat.supertomcatutils.queue.TaskScheduled")
+@Label("Task Scheduled")
+@Category({ "SupertomcatUtils", "Queue" })
+@Description("Task was removed from the queue and submitted for execution")
+@StackTrace(false)
+public class TaskScheduledEvent extends Event {
+	/**
+	 * Task
+	 */
+	@Label("Task")
+	public String task;
+
+	/**
+	 * Restriction Key
+	 */
+	@Label("Restriction Key")
+	public String restrictionKey;
+
+	/**
+	 * Time the task waited in the queue
+	 */
+	@Label("Queue Wait Time")
+	@Timespan(Timespan.NANOSECONDS)
+	public long queueWaitTime;
+
+	/**
+	 * Count of tasks of the restriction key, which are executing
+	 */
+	@Label("Restricted Count")
+	public int restrictedCount;
+}
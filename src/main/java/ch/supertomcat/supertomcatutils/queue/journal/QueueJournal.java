@@ -0,0 +1,518 @@
+package ch.supertomcat.supertomcatutils.queue.journal;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Append-only journal of queue mutations, which allows to restore the queue after the process was terminated.
+ * 
+ * Mutations are only put into an in-memory queue by the calling thread. A writer thread writes all pending records in one batch and then forces them to
+ * disk once (group commit), so adding tasks never waits for the disk. Every record is written with its length and a CRC32 checksum, so a record, which was
+ * only partially written when the process died, is detected and ignored on replay.
+ * 
+ * When the journal contains much more records than there are tasks in the queue, it is compacted by writing the add records of the tasks, which are still
+ * in the queue, to a new file, which then replaces the journal. The journal is also compacted when it is opened.
+ * 
+ * @param <T> Task Type
+ */
+public class QueueJournal<T> {
+	/**
+	 * Record Type: Task was added to the queue
+	 */
+	private static final byte RECORD_ADD = 1;
+
+	/**
+	 * Record Type: Task was started
+	 */
+	private static final byte RECORD_START = 2;
+
+	/**
+	 * Record Type: Task was completed
+	 */
+	private static final byte RECORD_COMPLETE = 3;
+
+	/**
+	 * Record Type: Task was removed from the queue without being executed
+	 */
+	private static final byte RECORD_CANCEL = 4;
+
+	/**
+	 * Default time in milliseconds the writer thread waits for further records before writing a batch
+	 */
+	public static final long DEFAULT_COMMIT_INTERVAL = 10;
+
+	/**
+	 * Default minimum count of records, before the journal is compacted
+	 */
+	public static final int DEFAULT_COMPACTION_MIN_RECORDS = 10000;
+
+	/**
+	 * Logger
+	 */
+	private final Logger logger = LoggerFactory.getLogger(getClass());
+
+	/**
+	 * Journal File
+	 */
+	private final Path file;
+
+	/**
+	 * Serializer
+	 */
+	private final QueueTaskSerializer<T> serializer;
+
+	/**
+	 * Pending records
+	 */
+	private final BlockingQueue<JournalRecord> pendingRecords = new LinkedBlockingQueue<>();
+
+	/**
+	 * IDs of tasks, which are in the queue or executing. Only accessed by the writer thread after opening.
+	 */
+	private final Set<String> liveTaskIds = new HashSet<>();
+
+	/**
+	 * Time in milliseconds the writer thread waits for further records before writing a batch
+	 */
+	private long commitInterval = DEFAULT_COMMIT_INTERVAL;
+
+	/**
+	 * Minimum count of records, before the journal is compacted
+	 */
+	private int compactionMinRecords = DEFAULT_COMPACTION_MIN_RECORDS;
+
+	/**
+	 * Count of records in the journal file. Only accessed by the writer thread after opening.
+	 */
+	private long recordCount = 0;
+
+	/**
+	 * File Channel
+	 */
+	private FileChannel channel = null;
+
+	/**
+	 * Writer Thread
+	 */
+	private Thread writerThread = null;
+
+	/**
+	 * Flag if journal is open
+	 */
+	private volatile boolean open = false;
+
+	/**
+	 * Constructor
+	 * 
+	 * @param file Journal File
+	 * @param serializer Serializer
+	 */
+	public QueueJournal(Path file, QueueTaskSerializer<T> serializer) {
+		this.file = file;
+		this.serializer = serializer;
+	}
+
+	/**
+	 * Sets the commitInterval. Must be called before the journal is opened.
+	 * 
+	 * @param commitInterval Time in milliseconds the writer thread waits for further records before writing a batch
+	 */
+	public void setCommitInterval(long commitInterval) {
+		this.commitInterval = commitInterval;
+	}
+
+	/**
+	 * Sets the compactionMinRecords. Must be called before the journal is opened.
+	 * 
+	 * @param compactionMinRecords Minimum count of records, before the journal is compacted
+	 */
+	public void setCompactionMinRecords(int compactionMinRecords) {
+		this.compactionMinRecords = compactionMinRecords;
+	}
+
+	/**
+	 * @return True if journal is open, false otherwise
+	 */
+	public boolean isOpen() {
+		return open;
+	}
+
+	/**
+	 * Open the journal. The tasks which were in the queue or executing when the journal was last written are read, the journal is compacted and the writer
+	 * thread is started.
+	 * 
+	 * @return Tasks which were in the queue or executing, in the order they were added
+	 * @throws IOException
+	 */
+	public synchronized List<T> open() throws IOException {
+		if (open) {
+			throw new IllegalStateException("Journal is already open: " + file);
+		}
+
+		Map<String, byte[]> liveTasks = replay();
+
+		List<T> tasks = new ArrayList<>(liveTasks.size());
+		for (byte[] data : liveTasks.values()) {
+			try {
+				tasks.add(serializer.deserialize(data));
+			} catch (IOException e) {
+				logger.error("Could not deserialize task from journal: {}", file, e);
+			}
+		}
+
+		liveTaskIds.clear();
+		liveTaskIds.addAll(liveTasks.keySet());
+		recordCount = liveTasks.size();
+		writeCompactedFile(liveTasks);
+		channel = FileChannel.open(file, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+
+		open = true;
+		writerThread = new Thread(this::writeRecords);
+		writerThread.setName("QueueJournalWriterThread-" + writerThread.threadId());
+		writerThread.start();
+		return tasks;
+	}
+
+	/**
+	 * Close the journal. All pending records are written before the journal is closed. Mutations after closing are ignored.
+	 */
+	public synchronized void close() {
+		if (!open) {
+			return;
+		}
+		open = false;
+		pendingRecords.add(JournalRecord.CLOSE);
+		try {
+			writerThread.join();
+		} catch (InterruptedException e) {
+			logger.error("Wait for journal writer thread to finish was interrupted", e);
+			Thread.currentThread().interrupt();
+		}
+		try {
+			channel.close();
+		} catch (IOException e) {
+			logger.error("Could not close journal: {}", file, e);
+		}
+		writerThread = null;
+		channel = null;
+	}
+
+	/**
+	 * Waits until all records, which were added before, are written to disk
+	 * 
+	 * @throws InterruptedException
+	 */
+	public void flush() throws InterruptedException {
+		if (!open) {
+			return;
+		}
+		CompletableFuture<Void> future = new CompletableFuture<>();
+		pendingRecords.add(new JournalRecord((byte)0, null, null, future));
+		try {
+			future.get();
+		} catch (ExecutionException e) {
+			logger.error("Could not flush journal: {}", file, e.getCause());
+		}
+	}
+
+	/**
+	 * Task was added to the queue
+	 * 
+	 * @param task Task
+	 */
+	public void taskAdded(T task) {
+		if (!open) {
+			return;
+		}
+		try {
+			pendingRecords.add(new JournalRecord(RECORD_ADD, serializer.getTaskId(task), serializer.serialize(task), null));
+		} catch (IOException e) {
+			logger.error("Could not serialize task for journal: {}", task, e);
+		}
+	}
+
+	/**
+	 * Task was started
+	 * 
+	 * @param task Task
+	 */
+	public void taskStarted(T task) {
+		addRecord(RECORD_START, task);
+	}
+
+	/**
+	 * Task was completed
+	 * 
+	 * @param task Task
+	 */
+	public void taskCompleted(T task) {
+		addRecord(RECORD_COMPLETE, task);
+	}
+
+	/**
+	 * Task was removed from the queue without being executed
+	 * 
+	 * @param task Task
+	 */
+	public void taskCancelled(T task) {
+		addRecord(RECORD_CANCEL, task);
+	}
+
+	/**
+	 * @param type Record Type
+	 * @param task Task
+	 */
+	private void addRecord(byte type, T task) {
+		if (open) {
+			pendingRecords.add(new JournalRecord(type, serializer.getTaskId(task), null, null));
+		}
+	}
+
+	/**
+	 * Writer Thread: Writes pending records in batches
+	 */
+	private void writeRecords() {
+		List<JournalRecord> batch = new ArrayList<>();
+		ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+		boolean closed = false;
+		while (!closed) {
+			try {
+				JournalRecord first = pendingRecords.take();
+				batch.add(first);
+				if (first != JournalRecord.CLOSE && commitInterval > 0) {
+					// Wait a little bit for further records, so that they are written with the same force
+					JournalRecord next = pendingRecords.poll(commitInterval, TimeUnit.MILLISECONDS);
+					if (next != null) {
+						batch.add(next);
+					}
+				}
+			} catch (InterruptedException e) {
+				logger.error("Journal writer thread was interrupted", e);
+			}
+			pendingRecords.drainTo(batch);
+
+			List<CompletableFuture<Void>> flushFutures = new ArrayList<>();
+			buffer.reset();
+			try (DataOutputStream out = new DataOutputStream(buffer)) {
+				for (JournalRecord record : batch) {
+					if (record == JournalRecord.CLOSE) {
+						closed = true;
+					} else if (record.flushFuture() != null) {
+						flushFutures.add(record.flushFuture());
+					} else {
+						writeRecord(out, record);
+						applyRecord(record);
+					}
+				}
+			} catch (IOException e) {
+				logger.error("Could not serialize journal records", e);
+			}
+
+			IOException writeException = null;
+			try {
+				ByteBuffer byteBuffer = ByteBuffer.wrap(buffer.toByteArray());
+				while (byteBuffer.hasRemaining()) {
+					channel.write(byteBuffer);
+				}
+				channel.force(false);
+			} catch (IOException e) {
+				logger.error("Could not write journal: {}", file, e);
+				writeException = e;
+			}
+			batch.clear();
+
+			if (writeException == null && recordCount >= compactionMinRecords && recordCount > 2L * liveTaskIds.size()) {
+				compact();
+			}
+
+			for (CompletableFuture<Void> flushFuture : flushFutures) {
+				if (writeException != null) {
+					flushFuture.completeExceptionally(writeException);
+				} else {
+					flushFuture.complete(null);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Update live task IDs with record
+	 * 
+	 * @param record Record
+	 */
+	private void applyRecord(JournalRecord record) {
+		recordCount++;
+		if (record.type() == RECORD_ADD) {
+			liveTaskIds.add(record.taskId());
+		} else if (record.type() == RECORD_COMPLETE || record.type() == RECORD_CANCEL) {
+			liveTaskIds.remove(record.taskId());
+		}
+	}
+
+	/**
+	 * Compact the journal by rewriting it with only the add records of live tasks
+	 */
+	private void compact() {
+		try {
+			channel.close();
+			Map<String, byte[]> liveTasks = replay();
+			liveTasks.keySet().retainAll(liveTaskIds);
+			writeCompactedFile(liveTasks);
+			recordCount = liveTasks.size();
+		} catch (IOException e) {
+			logger.error("Could not compact journal: {}", file, e);
+		}
+		try {
+			channel = FileChannel.open(file, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+		} catch (IOException e) {
+			logger.error("Could not open journal after compaction: {}", file, e);
+		}
+	}
+
+	/**
+	 * Read the journal file
+	 * 
+	 * @return Serialized live tasks by ID, in the order they were added
+	 * @throws IOException
+	 */
+	private Map<String, byte[]> replay() throws IOException {
+		Map<String, byte[]> liveTasks = new LinkedHashMap<>();
+		if (!Files.exists(file)) {
+			return liveTasks;
+		}
+		CRC32 crc = new CRC32();
+		try (InputStream fileIn = Files.newInputStream(file); DataInputStream in = new DataInputStream(new BufferedInputStream(fileIn))) {
+			while (true) {
+				byte[] payload;
+				try {
+					int length = in.readInt();
+					int checksum = in.readInt();
+					if (length <= 0) {
+						logger.error("Invalid record length in journal, ignoring rest of journal: {}", file);
+						break;
+					}
+					payload = new byte[length];
+					in.readFully(payload);
+					crc.reset();
+					crc.update(payload);
+					if ((int)crc.getValue() != checksum) {
+						logger.error("Invalid checksum in journal, ignoring rest of journal: {}", file);
+						break;
+					}
+				} catch (EOFException e) {
+					// End of file or incomplete record
+					break;
+				}
+
+				try (DataInputStream recordIn = new DataInputStream(new ByteArrayInputStream(payload))) {
+					byte type = recordIn.readByte();
+					String taskId = recordIn.readUTF();
+					if (type == RECORD_ADD) {
+						byte[] data = new byte[recordIn.readInt()];
+						recordIn.readFully(data);
+						liveTasks.remove(taskId);
+						liveTasks.put(taskId, data);
+					} else if (type == RECORD_COMPLETE || type == RECORD_CANCEL) {
+						liveTasks.remove(taskId);
+					}
+				}
+			}
+		}
+		return liveTasks;
+	}
+
+	/**
+	 * Write a new journal file, which only contains the add records of the given tasks and replace the journal file with it
+	 * 
+	 * @param liveTasks Serialized tasks by ID
+	 * @throws IOException
+	 */
+	private void writeCompactedFile(Map<String, byte[]> liveTasks) throws IOException {
+		Path parent = file.toAbsolutePath().getParent();
+		if (parent != null) {
+			Files.createDirectories(parent);
+		}
+		Path tempFile = file.resolveSibling(file.getFileName() + ".tmp");
+		try (FileChannel tempChannel = FileChannel.open(tempFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+			ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+			try (DataOutputStream out = new DataOutputStream(buffer)) {
+				for (Map.Entry<String, byte[]> entry : liveTasks.entrySet()) {
+					writeRecord(out, new JournalRecord(RECORD_ADD, entry.getKey(), entry.getValue(), null));
+				}
+			}
+			ByteBuffer byteBuffer = ByteBuffer.wrap(buffer.toByteArray());
+			while (byteBuffer.hasRemaining()) {
+				tempChannel.write(byteBuffer);
+			}
+			tempChannel.force(true);
+		}
+		Files.move(tempFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	/**
+	 * Write a record with length and checksum
+	 * 
+	 * @param out Output Stream
+	 * @param record Record
+	 * @throws IOException
+	 */
+	private static void writeRecord(DataOutputStream out, JournalRecord record) throws IOException {
+		ByteArrayOutputStream payloadBuffer = new ByteArrayOutputStream();
+		try (DataOutputStream payloadOut = new DataOutputStream(payloadBuffer)) {
+			payloadOut.writeByte(record.type());
+			payloadOut.writeUTF(record.taskId());
+			if (record.type() == RECORD_ADD) {
+				payloadOut.writeInt(record.data().length);
+				payloadOut.write(record.data());
+			}
+		}
+		byte[] payload = payloadBuffer.toByteArray();
+		CRC32 crc = new CRC32();
+		crc.update(payload);
+		out.writeInt(payload.length);
+		out.writeInt((int)crc.getValue());
+		out.write(payload);
+	}
+
+	/**
+	 * Journal Record
+	 * 
+	 * @param type Record Type
+	 * @param taskId Task ID
+	 * @param data Serialized Task for add records, null otherwise
+	 * @param flushFuture Future, which is completed when all previous records were written, or null if this is not a flush marker
+	 */
+	private record JournalRecord(byte type, String taskId, byte[] data, CompletableFuture<Void> flushFuture) {
+		/**
+		 * Marker for closing the journal
+		 */
+		private static final JournalRecord CLOSE = new JournalRecord((byte)0, null, null, null);
+	}
+}
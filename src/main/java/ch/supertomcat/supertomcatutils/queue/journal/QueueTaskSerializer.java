@@ -0,0 +1,37 @@
+package ch.supertomcat.supertomcatutils.queue.journal;
+
+import java.io.IOException;
+
+/**
+ * Serializer for tasks, which are written to a {@link QueueJournal}
+ * 
+ * @param <T> Task Type
+ */
+public interface QueueTaskSerializer<T> {
+	/**
+	 * Returns a unique and stable ID for the task. The ID is used to match the records of a task in the journal, so it must not change while the task is in
+	 * the queue.
+	 * 
+	 * @param task Task
+	 * @return ID
+	 */
+	public String getTaskId(T task);
+
+	/**
+	 * Serialize task
+	 * 
+	 * @param task Task
+	 * @return Serialized task
+	 * @throws IOException
+	 */
+	public byte[] serialize(T task) throws IOException;
+
+	/**
+	 * Deserialize task
+	 * 
+	 * @param data Serialized task
+	 * @return Task
+	 * @throws IOException
+	 */
+	public T deserialize(byte[] data) throws IOException;
+}
@@ -0,0 +1,148 @@
+package ch.supertomcat.supertomcatutils.queue.metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock-free histogram for latencies in nanoseconds with log-linear buckets like HdrHistogram.
+ * 
+ * Values are recorded with a precision of 4 significant bits, which means the relative error is below 6.25%. The buckets are allocated once, so recording
+ * a value does not allocate any memory.
+ */
+public class LatencyHistogram {
+	/**
+	 * Count of significant bits
+	 */
+	private static final int SUB_BUCKET_BITS = 4;
+
+	/**
+	 * Count of sub buckets per power of two
+	 */
+	private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+
+	/**
+	 * Count of buckets, which covers all positive long values
+	 */
+	private static final int BUCKET_COUNT = (Long.SIZE - SUB_BUCKET_BITS) * SUB_BUCKET_COUNT;
+
+	/**
+	 * Counts per bucket
+	 */
+	private final AtomicLongArray counts = new AtomicLongArray(BUCKET_COUNT);
+
+	/**
+	 * Count of recorded values
+	 */
+	private final LongAdder count = new LongAdder();
+
+	/**
+	 * Sum of recorded values
+	 */
+	private final LongAdder sum = new LongAdder();
+
+	/**
+	 * Maximum recorded value
+	 */
+	private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+	/**
+	 * Record value
+	 * 
+	 * @param value Value in nanoseconds, negative values are recorded as 0
+	 */
+	public void record(long value) {
+		long v = Math.max(0, value);
+		counts.incrementAndGet(getBucketIndex(v));
+		count.increment();
+		sum.add(v);
+		max.accumulate(v);
+	}
+
+	/**
+	 * Reset histogram
+	 */
+	public void reset() {
+		for (int i = 0; i < BUCKET_COUNT; i++) {
+			counts.set(i, 0);
+		}
+		count.reset();
+		sum.reset();
+		max.reset();
+	}
+
+	/**
+	 * Returns a snapshot of the histogram. The snapshot is not atomic, values which are recorded while the snapshot is taken might be missing.
+	 * 
+	 * @return Snapshot
+	 */
+	public LatencyHistogramSnapshot getSnapshot() {
+		long[] snapshotCounts = new long[BUCKET_COUNT];
+		long total = 0;
+		for (int i = 0; i < BUCKET_COUNT; i++) {
+			snapshotCounts[i] = counts.get(i);
+			total += snapshotCounts[i];
+		}
+		long snapshotSum = sum.sum();
+		long mean = total > 0 ? snapshotSum / total : 0;
+		long snapshotMax = max.get();
+		return new LatencyHistogramSnapshot(total, mean, getPercentile(snapshotCounts, total, 0.5, snapshotMax), getPercentile(snapshotCounts, total, 0.9,
+				snapshotMax), getPercentile(snapshotCounts, total, 0.99, snapshotMax), snapshotMax);
+	}
+
+	/**
+	 * @return Count of recorded values
+	 */
+	public long getCount() {
+		return count.sum();
+	}
+
+	/**
+	 * @param counts Counts per bucket
+	 * @param total Total count
+	 * @param percentile Percentile (0.0 to 1.0)
+	 * @param max Maximum recorded value
+	 * @return Highest value of the bucket, which contains the percentile, but not more than the maximum
+	 */
+	private static long getPercentile(long[] counts, long total, double percentile, long max) {
+		if (total == 0) {
+			return 0;
+		}
+		long threshold = Math.max(1, (long)Math.ceil(total * percentile));
+		long cumulative = 0;
+		for (int i = 0; i < counts.length; i++) {
+			cumulative += counts[i];
+			if (cumulative >= threshold) {
+				return Math.min(getBucketHighestValue(i), max);
+			}
+		}
+		return max;
+	}
+
+	/**
+	 * @param value Value
+	 * @return Bucket Index
+	 */
+	static int getBucketIndex(long value) {
+		if (value < SUB_BUCKET_COUNT) {
+			return (int)value;
+		}
+		int magnitude = 63 - Long.numberOfLeadingZeros(value);
+		int subBucket = (int)((value >>> (magnitude - SUB_BUCKET_BITS)) & (SUB_BUCKET_COUNT - 1));
+		return (magnitude - SUB_BUCKET_BITS + 1) * SUB_BUCKET_COUNT + subBucket;
+	}
+
+	/**
+	 * @param index Bucket Index
+	 * @return Highest value, which is recorded in the bucket
+	 */
+	static long getBucketHighestValue(int index) {
+		if (index < SUB_BUCKET_COUNT) {
+			return index;
+		}
+		int magnitude = index / SUB_BUCKET_COUNT + SUB_BUCKET_BITS - 1;
+		long subBucket = index % SUB_BUCKET_COUNT;
+		long lowestValue = (1L << magnitude) | (subBucket << (magnitude - SUB_BUCKET_BITS));
+		return lowestValue + (1L << (magnitude - SUB_BUCKET_BITS)) - 1;
+	}
+}
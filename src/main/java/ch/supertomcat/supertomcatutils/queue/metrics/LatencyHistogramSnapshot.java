@@ -0,0 +1,14 @@
+package ch.supertomcat.supertomcatutils.queue.metrics;
+
+/**
+ * Snapshot of a {@link LatencyHistogram}. All values are in nanoseconds.
+ * 
+ * @param count Count of recorded values
+ * @param mean Mean
+ * @param p50 50th percentile
+ * @param p90 90th percentile
+ * @param p99 99th percentile
+ * @param max Maximum
+ */
+public record LatencyHistogramSnapshot(long count, long mean, long p50, long p90, long p99, long max) {
+}
@@ -0,0 +1,436 @@
+package ch.supertomcat.supertomcatutils.queue.metrics;
+
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Metrics of a queue. Recording is lock-free and only increments counters and histogram buckets, so it can be called while holding the lock of the queue.
+ */
+public class QueueMetrics implements QueueMetricsMBean {
+	/**
+	 * Default maximum count of restriction keys for which metrics are recorded
+	 */
+	public static final int DEFAULT_MAX_RESTRICTION_KEY_COUNT = 100;
+
+	/**
+	 * Time in nanoseconds after which the metrics of a restriction key without recorded tasks are removed
+	 */
+	private static final long RESTRICTION_METRICS_IDLE_TIME = TimeUnit.MINUTES.toNanos(10);
+
+	/**
+	 * Count of tasks, which were started
+	 */
+	private final LongAdder scheduledTasks = new LongAdder();
+
+	/**
+	 * Count of tasks, which completed successfully
+	 */
+	private final LongAdder completedTasks = new LongAdder();
+
+	/**
+	 * Count of tasks, which failed
+	 */
+	private final LongAdder failedTasks = new LongAdder();
+
+	/**
+	 * Count of tasks, which were cancelled while executing or removed from the queue
+	 */
+	private final LongAdder cancelledTasks = new LongAdder();
+
+	/**
+	 * Count of tasks, which were rejected, because the queue was full
+	 */
+	private final LongAdder rejectedTasks = new LongAdder();
+
+	/**
+	 * Time tasks waited in the queue
+	 */
+	private final LatencyHistogram queueWaitTime = new LatencyHistogram();
+
+	/**
+	 * Time tasks were executing
+	 */
+	private final LatencyHistogram executionTime = new LatencyHistogram();
+
+	/**
+	 * Metrics by restriction key
+	 */
+	private final Map<String, RestrictionMetrics> restrictionMetrics = new ConcurrentHashMap<>();
+
+	/**
+	 * Flag if metrics are recorded per restriction key
+	 */
+	private volatile boolean restrictionMetricsEnabled = false;
+
+	/**
+	 * Maximum count of restriction keys for which metrics are recorded
+	 */
+	private volatile int maxRestrictionKeyCount = DEFAULT_MAX_RESTRICTION_KEY_COUNT;
+
+	/**
+	 * Count of tasks in the queue
+	 */
+	private volatile int queueSize = 0;
+
+	/**
+	 * Count of currently executing tasks
+	 */
+	private volatile int executingTasks = 0;
+
+	/**
+	 * Maximum connection count
+	 */
+	private volatile int maxConnectionCount = 0;
+
+	/**
+	 * Name under which the MBean is registered or null if not registered
+	 */
+	private ObjectName objectName = null;
+
+	/**
+	 * Constructor
+	 */
+	public QueueMetrics() {
+	}
+
+	/**
+	 * Update the gauges. Has to be called by the queue when the counts changed.
+	 * 
+	 * @param queueSize Count of tasks in the queue
+	 * @param executingTasks Count of currently executing tasks
+	 * @param maxConnectionCount Maximum connection count
+	 */
+	public void updateGauges(int queueSize, int executingTasks, int maxConnectionCount) {
+		this.queueSize = queueSize;
+		this.executingTasks = executingTasks;
+		this.maxConnectionCount = maxConnectionCount;
+	}
+
+	/**
+	 * Task was started
+	 * 
+	 * @param restrictionKey Restriction Key
+	 * @param waitTime Time in nanoseconds the task waited in the queue
+	 */
+	public void taskScheduled(String restrictionKey, long waitTime) {
+		scheduledTasks.increment();
+		queueWaitTime.record(waitTime);
+		if (restrictionMetricsEnabled) {
+			getRestrictionMetrics(restrictionKey).queueWaitTime.record(waitTime);
+		}
+	}
+
+	/**
+	 * Task completed, failed or was cancelled while executing
+	 * 
+	 * @param restrictionKey Restriction Key
+	 * @param state State of the future of the task
+	 * @param executionTime Time in nanoseconds the task was executing
+	 */
+	public void taskCompleted(String restrictionKey, Future.State state, long executionTime) {
+		switch (state) {
+			case SUCCESS -> completedTasks.increment();
+			case FAILED -> failedTasks.increment();
+			case CANCELLED -> cancelledTasks.increment();
+			default -> {
+				// Task is not done, which should not happen
+			}
+		}
+		this.executionTime.record(executionTime);
+		if (restrictionMetricsEnabled) {
+			getRestrictionMetrics(restrictionKey).executionTime.record(executionTime);
+		}
+	}
+
+	/**
+	 * Task was removed from the queue without being executed
+	 */
+	public void taskCancelled() {
+		cancelledTasks.increment();
+	}
+
+	/**
+	 * Tasks were removed from the queue without being executed
+	 * 
+	 * @param count Count of removed tasks
+	 */
+	public void tasksCancelled(int count) {
+		cancelledTasks.add(count);
+	}
+
+	/**
+	 * Task was rejected, because the queue was full
+	 */
+	public void taskRejected() {
+		rejectedTasks.increment();
+	}
+
+	/**
+	 * Returns the metrics of the restriction key. When metrics for a new restriction key are created, the metrics of idle restriction keys are removed and
+	 * if there are still too many restriction keys, the metrics of the least recently used restriction key are removed.
+	 * 
+	 * @param restrictionKey Restriction Key
+	 * @return Restriction Metrics
+	 */
+	private RestrictionMetrics getRestrictionMetrics(String restrictionKey) {
+		long now = currentTime();
+		RestrictionMetrics metrics = restrictionMetrics.get(restrictionKey);
+		if (metrics == null) {
+			removeIdleRestrictionMetrics(now);
+			metrics = restrictionMetrics.computeIfAbsent(restrictionKey, k -> new RestrictionMetrics());
+		}
+		metrics.lastUsed = now;
+		return metrics;
+	}
+
+	/**
+	 * Remove metrics of idle restriction keys and the least recently used restriction keys, which exceed the maximum count
+	 * 
+	 * @param now Time in nanoseconds
+	 */
+	private void removeIdleRestrictionMetrics(long now) {
+		restrictionMetrics.values().removeIf(metrics -> now - metrics.lastUsed > RESTRICTION_METRICS_IDLE_TIME);
+		while (!restrictionMetrics.isEmpty() && restrictionMetrics.size() >= maxRestrictionKeyCount) {
+			String leastRecentlyUsedRestrictionKey = null;
+			long leastRecentlyUsed = 0;
+			for (Map.Entry<String, RestrictionMetrics> entry : restrictionMetrics.entrySet()) {
+				long lastUsed = entry.getValue().lastUsed;
+				if (leastRecentlyUsedRestrictionKey == null || lastUsed - leastRecentlyUsed < 0) {
+					leastRecentlyUsedRestrictionKey = entry.getKey();
+					leastRecentlyUsed = lastUsed;
+				}
+			}
+			restrictionMetrics.remove(leastRecentlyUsedRestrictionKey);
+		}
+	}
+
+	/**
+	 * Returns the current time. Can be overridden for tests.
+	 * 
+	 * @return Current time in nanoseconds
+	 */
+	protected long currentTime() {
+		return System.nanoTime();
+	}
+
+	/**
+	 * Returns the restrictionMetricsEnabled
+	 * 
+	 * @return True if metrics are recorded per restriction key, false otherwise
+	 */
+	public boolean isRestrictionMetricsEnabled() {
+		return restrictionMetricsEnabled;
+	}
+
+	/**
+	 * Sets the restrictionMetricsEnabled. Metrics per restriction key need two histograms per restriction key, so they are disabled by default. Disabling
+	 * them removes the recorded metrics per restriction key.
+	 * 
+	 * @param restrictionMetricsEnabled True if metrics should be recorded per restriction key, false otherwise
+	 */
+	public void setRestrictionMetricsEnabled(boolean restrictionMetricsEnabled) {
+		this.restrictionMetricsEnabled = restrictionMetricsEnabled;
+		if (!restrictionMetricsEnabled) {
+			restrictionMetrics.clear();
+		}
+	}
+
+	/**
+	 * Returns the maxRestrictionKeyCount
+	 * 
+	 * @return Maximum count of restriction keys for which metrics are recorded
+	 */
+	public int getMaxRestrictionKeyCount() {
+		return maxRestrictionKeyCount;
+	}
+
+	/**
+	 * Sets the maxRestrictionKeyCount. When the maximum is reached, the metrics of the least recently used restriction key are removed.
+	 * 
+	 * @param maxRestrictionKeyCount Maximum count of restriction keys for which metrics are recorded
+	 */
+	public void setMaxRestrictionKeyCount(int maxRestrictionKeyCount) {
+		this.maxRestrictionKeyCount = maxRestrictionKeyCount;
+	}
+
+	/**
+	 * Returns a snapshot of the metrics
+	 * 
+	 * @return Snapshot
+	 */
+	public QueueMetricsSnapshot getSnapshot() {
+		Map<String, RestrictionMetricsSnapshot> restrictions = new TreeMap<>();
+		for (Map.Entry<String, RestrictionMetrics> entry : restrictionMetrics.entrySet()) {
+			RestrictionMetrics metrics = entry.getValue();
+			restrictions.put(entry.getKey(), new RestrictionMetricsSnapshot(entry.getKey(), metrics.queueWaitTime.getSnapshot(), metrics.executionTime.getSnapshot()));
+		}
+		return new QueueMetricsSnapshot(scheduledTasks.sum(), completedTasks.sum(), failedTasks.sum(), cancelledTasks.sum(), rejectedTasks.sum(), queueSize, executingTasks,
+				maxConnectionCount, queueWaitTime.getSnapshot(), executionTime.getSnapshot(), restrictions);
+	}
+
+	/**
+	 * Register as MBean at the platform MBean server
+	 * 
+	 * @param name Object Name, for example "ch.supertomcat.supertomcatutils:type=QueueMetrics,name=Downloads"
+	 * @throws JMException
+	 */
+	public synchronized void registerMBean(String name) throws JMException {
+		unregisterMBean();
+		ObjectName newObjectName = new ObjectName(name);
+		ManagementFactory.getPlatformMBeanServer().registerMBean(this, newObjectName);
+		objectName = newObjectName;
+	}
+
+	/**
+	 * Unregister MBean from the platform MBean server, if it was registered
+	 * 
+	 * @throws JMException
+	 */
+	public synchronized void unregisterMBean() throws JMException {
+		if (objectName == null) {
+			return;
+		}
+		MBeanServer mBeanServer = ManagementFactory.getPlatformMBeanServer();
+		if (mBeanServer.isRegistered(objectName)) {
+			mBeanServer.unregisterMBean(objectName);
+		}
+		objectName = null;
+	}
+
+	@Override
+	public long getScheduledTasks() {
+		return scheduledTasks.sum();
+	}
+
+	@Override
+	public long getCompletedTasks() {
+		return completedTasks.sum();
+	}
+
+	@Override
+	public long getFailedTasks() {
+		return failedTasks.sum();
+	}
+
+	@Override
+	public long getCancelledTasks() {
+		return cancelledTasks.sum();
+	}
+
+	@Override
+	public long getRejectedTasks() {
+		return rejectedTasks.sum();
+	}
+
+	@Override
+	public int getQueueSize() {
+		return queueSize;
+	}
+
+	@Override
+	public int getExecutingTasks() {
+		return executingTasks;
+	}
+
+	@Override
+	public double getSlotUtilisation() {
+		int currentMaxConnectionCount = maxConnectionCount;
+		return currentMaxConnectionCount > 0 ? Math.min(1.0, (double)executingTasks / currentMaxConnectionCount) : 0;
+	}
+
+	@Override
+	public double getQueueWaitTimeMean() {
+		return toMillis(queueWaitTime.getSnapshot().mean());
+	}
+
+	@Override
+	public double getQueueWaitTime99thPercentile() {
+		return toMillis(queueWaitTime.getSnapshot().p99());
+	}
+
+	@Override
+	public double getQueueWaitTimeMax() {
+		return toMillis(queueWaitTime.getSnapshot().max());
+	}
+
+	@Override
+	public double getExecutionTimeMean() {
+		return toMillis(executionTime.getSnapshot().mean());
+	}
+
+	@Override
+	public double getExecutionTime99thPercentile() {
+		return toMillis(executionTime.getSnapshot().p99());
+	}
+
+	@Override
+	public double getExecutionTimeMax() {
+		return toMillis(executionTime.getSnapshot().max());
+	}
+
+	@Override
+	public String[] getRestrictionKeys() {
+		return restrictionMetrics.keySet().stream().sorted().toArray(String[]::new);
+	}
+
+	@Override
+	public double getQueueWaitTime99thPercentile(String restrictionKey) {
+		RestrictionMetrics metrics = restrictionMetrics.get(restrictionKey);
+		return metrics != null ? toMillis(metrics.queueWaitTime.getSnapshot().p99()) : 0;
+	}
+
+	@Override
+	public double getExecutionTime99thPercentile(String restrictionKey) {
+		RestrictionMetrics metrics = restrictionMetrics.get(restrictionKey);
+		return metrics != null ? toMillis(metrics.executionTime.getSnapshot().p99()) : 0;
+	}
+
+	@Override
+	public void reset() {
+		scheduledTasks.reset();
+		completedTasks.reset();
+		failedTasks.reset();
+		cancelledTasks.reset();
+		rejectedTasks.reset();
+		queueWaitTime.reset();
+		executionTime.reset();
+		restrictionMetrics.clear();
+	}
+
+	/**
+	 * @param nanos Nanoseconds
+	 * @return Milliseconds
+	 */
+	private static double toMillis(long nanos) {
+		return (double)nanos / TimeUnit.MILLISECONDS.toNanos(1);
+	}
+
+	/**
+	 * Metrics of a restriction key
+	 */
+	private static class RestrictionMetrics {
+		/**
+		 * Time tasks waited in the queue
+		 */
+		private final LatencyHistogram queueWaitTime = new LatencyHistogram();
+
+		/**
+		 * Time tasks were executing
+		 */
+		private final LatencyHistogram executionTime = new LatencyHistogram();
+
+		/**
+		 * Time in nanoseconds when a task was recorded the last time
+		 */
+		private volatile long lastUsed;
+	}
+}
@@ -0,0 +1,98 @@
+package ch.supertomcat.supertomcatutils.queue.metrics;
+
+/**
+ * MBean Interface for {@link QueueMetrics}. All times are in milliseconds.
+ */
+public interface QueueMetricsMBean {
+	/**
+	 * @return Count of tasks, which were started
+	 */
+	public long getScheduledTasks();
+
+	/**
+	 * @return Count of tasks, which completed successfully
+	 */
+	public long getCompletedTasks();
+
+	/**
+	 * @return Count of tasks, which failed
+	 */
+	public long getFailedTasks();
+
+	/**
+	 * @return Count of tasks, which were cancelled while executing or removed from the queue
+	 */
+	public long getCancelledTasks();
+
+	/**
+	 * @return Count of tasks, which were rejected, because the queue was full
+	 */
+	public long getRejectedTasks();
+
+	/**
+	 * @return Count of tasks in the queue
+	 */
+	public int getQueueSize();
+
+	/**
+	 * @return Count of currently executing tasks
+	 */
+	public int getExecutingTasks();
+
+	/**
+	 * @return Ratio of used slots (0.0 to 1.0)
+	 */
+	public double getSlotUtilisation();
+
+	/**
+	 * @return Mean time tasks waited in the queue
+	 */
+	public double getQueueWaitTimeMean();
+
+	/**
+	 * @return 99th percentile of the time tasks waited in the queue
+	 */
+	public double getQueueWaitTime99thPercentile();
+
+	/**
+	 * @return Maximum time tasks waited in the queue
+	 */
+	public double getQueueWaitTimeMax();
+
+	/**
+	 * @return Mean time tasks were executing
+	 */
+	public double getExecutionTimeMean();
+
+	/**
+	 * @return 99th percentile of the time tasks were executing
+	 */
+	public double getExecutionTime99thPercentile();
+
+	/**
+	 * @return Maximum time tasks were executing
+	 */
+	public double getExecutionTimeMax();
+
+	/**
+	 * @return Restriction Keys for which metrics are available
+	 */
+	public String[] getRestrictionKeys();
+
+	/**
+	 * @param restrictionKey Restriction Key
+	 * @return 99th percentile of the time tasks of the restriction key waited in the queue
+	 */
+	public double getQueueWaitTime99thPercentile(String restrictionKey);
+
+	/**
+	 * @param restrictionKey Restriction Key
+	 * @return 99th percentile of the time tasks of the restriction key were executing
+	 */
+	public double getExecutionTime99thPercentile(String restrictionKey);
+
+	/**
+	 * Reset all counters and histograms
+	 */
+	public void reset();
+}
@@ -0,0 +1,29 @@
+package ch.supertomcat.supertomcatutils.queue.metrics;
+
+import java.util.Map;
+
+/**
+ * Snapshot of {@link QueueMetrics}
+ * 
+ * @param scheduledTasks Count of tasks, which were started
+ * @param completedTasks Count of tasks, which completed successfully
+ * @param failedTasks Count of tasks, which failed
+ * @param cancelledTasks Count of tasks, which were cancelled while executing or removed from the queue
+ * @param rejectedTasks Count of tasks, which were rejected, because the queue was full
+ * @param queueSize Count of tasks in the queue
+ * @param executingTasks Count of currently executing tasks
+ * @param maxConnectionCount Maximum connection count
+ * @param queueWaitTime Time tasks waited in the queue before they were started
+ * @param executionTime Time tasks were executing
+ * @param restrictions Metrics by restriction key
+ */
+public record QueueMetricsSnapshot(long scheduledTasks, long completedTasks, long failedTasks, long cancelledTasks, long rejectedTasks, int queueSize,
+		int executingTasks, int maxConnectionCount, LatencyHistogramSnapshot queueWaitTime, LatencyHistogramSnapshot executionTime,
+		Map<String, RestrictionMetricsSnapshot> restrictions) {
+	/**
+	 * @return Ratio of used slots (0.0 to 1.0)
+	 */
+	public double slotUtilisation() {
+		return maxConnectionCount > 0 ? Math.min(1.0, (double)executingTasks / maxConnectionCount) : 0;
+	}
+}
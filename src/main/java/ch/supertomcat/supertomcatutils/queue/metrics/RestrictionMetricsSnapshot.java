@@ -0,0 +1,11 @@
+package ch.supertomcat.supertomcatutils.queue.metrics;
+
+/**
+ * Snapshot of the metrics of a restriction key
+ * 
+ * @param restrictionKey Restriction Key
+ * @param queueWaitTime Time tasks waited in the queue before they were started
+ * @param executionTime Time tasks were executing
+ */
+public record RestrictionMetricsSnapshot(String restrictionKey, LatencyHistogramSnapshot queueWaitTime, LatencyHistogramSnapshot executionTime) {
+}
@@ -0,0 +1,252 @@
+package ch.supertomcat.supertomcatutils.queue.metrics;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Statistics of files and bytes since the application started. All methods are lock-free, so they can be called by every download thread for every chunk.
+ * 
+ * Statistics by restriction key are kept for a limited count of restriction keys. When the limit is reached, the statistics of the least recently used
+ * restriction key are removed.
+ */
+public class SessionStatistics {
+	/**
+	 * Length of the throughput window in seconds
+	 */
+	private static final int THROUGHPUT_WINDOW_LENGTH = 60;
+
+	/**
+	 * Default maximum count of restriction keys for which statistics are kept
+	 */
+	public static final int DEFAULT_MAX_RESTRICTION_KEY_COUNT = 1000;
+
+	/**
+	 * Files since application started
+	 */
+	private final LongAdder files = new LongAdder();
+
+	/**
+	 * Bytes since application started
+	 */
+	private final LongAdder bytes = new LongAdder();
+
+	/**
+	 * Bytes per second
+	 */
+	private final ThroughputWindow throughput = new ThroughputWindow(THROUGHPUT_WINDOW_LENGTH);
+
+	/**
+	 * Statistics by restriction key
+	 */
+	private final Map<String, RestrictionStatistics> restrictionStatistics = new ConcurrentHashMap<>();
+
+	/**
+	 * Maximum count of restriction keys for which statistics are kept
+	 */
+	private volatile int maxRestrictionKeyCount = DEFAULT_MAX_RESTRICTION_KEY_COUNT;
+
+	/**
+	 * Increases the files by 1
+	 */
+	public void increaseFiles() {
+		files.increment();
+	}
+
+	/**
+	 * Increases the files by 1
+	 * 
+	 * @param restrictionKey Restriction Key
+	 */
+	public void increaseFiles(String restrictionKey) {
+		files.increment();
+		RestrictionStatistics statistics = getRestrictionStatistics(restrictionKey);
+		statistics.files.increment();
+		statistics.lastUsed = currentTime();
+	}
+
+	/**
+	 * Increases the bytes
+	 * 
+	 * @param bytes Bytes
+	 */
+	public void increaseBytes(long bytes) {
+		this.bytes.add(bytes);
+		throughput.add(bytes);
+	}
+
+	/**
+	 * Increases the bytes
+	 * 
+	 * @param restrictionKey Restriction Key
+	 * @param bytes Bytes
+	 */
+	public void increaseBytes(String restrictionKey, long bytes) {
+		increaseBytes(bytes);
+		getRestrictionStatistics(restrictionKey).bytes.add(bytes);
+	}
+
+	/**
+	 * @return Files since application started
+	 */
+	public long getFiles() {
+		return files.sum();
+	}
+
+	/**
+	 * @return Bytes since application started
+	 */
+	public long getBytes() {
+		return bytes.sum();
+	}
+
+	/**
+	 * @return Bytes per second over the last second
+	 */
+	public double getBytesPerSecondLastSecond() {
+		return throughput.getPerSecond(1);
+	}
+
+	/**
+	 * @return Bytes per second over the last 10 seconds
+	 */
+	public double getBytesPerSecondLast10Seconds() {
+		return throughput.getPerSecond(10);
+	}
+
+	/**
+	 * @return Bytes per second over the last 60 seconds
+	 */
+	public double getBytesPerSecondLast60Seconds() {
+		return throughput.getPerSecond(60);
+	}
+
+	/**
+	 * @param restrictionKey Restriction Key
+	 * @return Files of the restriction key since application started
+	 */
+	public long getFiles(String restrictionKey) {
+		RestrictionStatistics statistics = restrictionStatistics.get(restrictionKey);
+		return statistics != null ? statistics.files.sum() : 0;
+	}
+
+	/**
+	 * @param restrictionKey Restriction Key
+	 * @return Bytes of the restriction key since application started
+	 */
+	public long getBytes(String restrictionKey) {
+		RestrictionStatistics statistics = restrictionStatistics.get(restrictionKey);
+		return statistics != null ? statistics.bytes.sum() : 0;
+	}
+
+	/**
+	 * @return Bytes since application started by restriction key
+	 */
+	public Map<String, Long> getBytesByRestrictionKey() {
+		Map<String, Long> bytesByRestrictionKey = new TreeMap<>();
+		for (Map.Entry<String, RestrictionStatistics> entry : restrictionStatistics.entrySet()) {
+			bytesByRestrictionKey.put(entry.getKey(), entry.getValue().bytes.sum());
+		}
+		return bytesByRestrictionKey;
+	}
+
+	/**
+	 * Returns the maxRestrictionKeyCount
+	 * 
+	 * @return Maximum count of restriction keys for which statistics are kept
+	 */
+	public int getMaxRestrictionKeyCount() {
+		return maxRestrictionKeyCount;
+	}
+
+	/**
+	 * Sets the maxRestrictionKeyCount. When the maximum is reached, the statistics of the restriction key, for which a file was completed the longest time
+	 * ago, are removed.
+	 * 
+	 * @param maxRestrictionKeyCount Maximum count of restriction keys for which statistics are kept
+	 */
+	public void setMaxRestrictionKeyCount(int maxRestrictionKeyCount) {
+		this.maxRestrictionKeyCount = maxRestrictionKeyCount;
+	}
+
+	/**
+	 * Reset all statistics
+	 */
+	public void reset() {
+		files.reset();
+		bytes.reset();
+		throughput.reset();
+		restrictionStatistics.clear();
+	}
+
+	/**
+	 * @param restrictionKey Restriction Key
+	 * @return Restriction Statistics
+	 */
+	private RestrictionStatistics getRestrictionStatistics(String restrictionKey) {
+		RestrictionStatistics statistics = restrictionStatistics.get(restrictionKey);
+		if (statistics == null) {
+			removeLeastRecentlyUsedRestrictionStatistics();
+			statistics = restrictionStatistics.computeIfAbsent(restrictionKey, k -> new RestrictionStatistics(currentTime()));
+		}
+		return statistics;
+	}
+
+	/**
+	 * Remove the statistics of the least recently used restriction keys, which exceed the maximum count
+	 */
+	private void removeLeastRecentlyUsedRestrictionStatistics() {
+		while (!restrictionStatistics.isEmpty() && restrictionStatistics.size() >= maxRestrictionKeyCount) {
+			String leastRecentlyUsedRestrictionKey = null;
+			long leastRecentlyUsed = 0;
+			for (Map.Entry<String, RestrictionStatistics> entry : restrictionStatistics.entrySet()) {
+				long lastUsed = entry.getValue().lastUsed;
+				if (leastRecentlyUsedRestrictionKey == null || lastUsed - leastRecentlyUsed < 0) {
+					leastRecentlyUsedRestrictionKey = entry.getKey();
+					leastRecentlyUsed = lastUsed;
+				}
+			}
+			restrictionStatistics.remove(leastRecentlyUsedRestrictionKey);
+		}
+	}
+
+	/**
+	 * Returns the current time. Can be overridden for tests.
+	 * 
+	 * @return Current time in nanoseconds
+	 */
+	protected long currentTime() {
+		return System.nanoTime();
+	}
+
+	/**
+	 * Statistics of a restriction key
+	 */
+	private static class RestrictionStatistics {
+		/**
+		 * Files since application started
+		 */
+		private final LongAdder files = new LongAdder();
+
+		/**
+		 * Bytes since application started
+		 */
+		private final LongAdder bytes = new LongAdder();
+
+		/**
+		 * Time in nanoseconds when the statistics were created or a file was completed the last time. Not updated for bytes, which are increased for every
+		 * chunk.
+		 */
+		private volatile long lastUsed;
+
+		/**
+		 * Constructor
+		 * 
+		 * @param lastUsed Time in nanoseconds
+		 */
+		public RestrictionStatistics(long lastUsed) {
+			this.lastUsed = lastUsed;
+		}
+	}
+}
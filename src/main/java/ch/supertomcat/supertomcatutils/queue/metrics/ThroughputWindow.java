@@ -0,0 +1,117 @@
+package ch.supertomcat.supertomcatutils.queue.metrics;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock-free rolling window of values per second, for example transferred bytes.
+ * 
+ * The values are collected in one slot per second. Each slot is a {@link LongAdder}, so threads adding values at the same time do not contend on a single
+ * value. Slots of past seconds are reused when their second is over the length of the window ago. Values which are added at the exact moment a slot is
+ * reused might be lost, so the throughput is an approximation, which is good enough for displaying it.
+ */
+public class ThroughputWindow {
+	/**
+	 * Nanoseconds per second
+	 */
+	private static final long NANOS_PER_SECOND = TimeUnit.SECONDS.toNanos(1);
+
+	/**
+	 * Length of the window in seconds
+	 */
+	private final int length;
+
+	/**
+	 * Second of the values in the slots
+	 */
+	private final AtomicLongArray seconds;
+
+	/**
+	 * Values of the slots
+	 */
+	private final LongAdder[] values;
+
+	/**
+	 * Constructor
+	 * 
+	 * @param length Length of the window in seconds
+	 */
+	public ThroughputWindow(int length) {
+		if (length <= 0) {
+			throw new IllegalArgumentException("Length must be greater than 0: " + length);
+		}
+		this.length = length;
+		/*
+		 * One additional slot for the current second, which is not complete yet
+		 */
+		this.seconds = new AtomicLongArray(length + 1);
+		this.values = new LongAdder[length + 1];
+		for (int i = 0; i < seconds.length(); i++) {
+			seconds.set(i, Long.MIN_VALUE);
+			values[i] = new LongAdder();
+		}
+	}
+
+	/**
+	 * Add value to the current second
+	 * 
+	 * @param value Value
+	 */
+	public void add(long value) {
+		long second = currentSecond();
+		int slot = (int)Math.floorMod(second, (long)seconds.length());
+		long slotSecond = seconds.get(slot);
+		if (slotSecond != second && seconds.compareAndSet(slot, slotSecond, second)) {
+			values[slot].reset();
+		}
+		values[slot].add(value);
+	}
+
+	/**
+	 * Returns the average value per second over the last complete seconds. The current second is not included, because it is not complete yet.
+	 * 
+	 * @param windowSeconds Count of seconds (1 to length of the window)
+	 * @return Average value per second
+	 */
+	public double getPerSecond(int windowSeconds) {
+		if (windowSeconds <= 0 || windowSeconds > length) {
+			throw new IllegalArgumentException("Window must be between 1 and " + length + ": " + windowSeconds);
+		}
+		long currentSecond = currentSecond();
+		long sum = 0;
+		for (int i = 0; i < seconds.length(); i++) {
+			long slotSecond = seconds.get(i);
+			if (slotSecond < currentSecond && slotSecond >= currentSecond - windowSeconds) {
+				sum += values[i].sum();
+			}
+		}
+		return (double)sum / windowSeconds;
+	}
+
+	/**
+	 * Returns the length
+	 * 
+	 * @return Length of the window in seconds
+	 */
+	public int getLength() {
+		return length;
+	}
+
+	/**
+	 * Reset all values
+	 */
+	public void reset() {
+		for (int i = 0; i < seconds.length(); i++) {
+			seconds.set(i, Long.MIN_VALUE);
+			values[i].reset();
+		}
+	}
+
+	/**
+	 * @return Current second
+	 */
+	protected long currentSecond() {
+		return Math.floorDiv(System.nanoTime(), NANOS_PER_SECOND);
+	}
+}
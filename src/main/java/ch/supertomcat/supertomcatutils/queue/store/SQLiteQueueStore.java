@@ -0,0 +1,691 @@
+package ch.supertomcat.supertomcatutils.queue.store;
+
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.sqlite.SQLiteConfig;
+
+import ch.supertomcat.supertomcatutils.database.sqlite.SQLiteDB;
+import ch.supertomcat.supertomcatutils.database.sqlite.SQLiteDBOperationEvent;
+import ch.supertomcat.supertomcatutils.queue.journal.QueueTaskSerializer;
+
+/**
+ * Queue storage in a SQLite database, which can be shared by several processes.
+ * 
+ * Processes claim tasks from the store. A claim is a lease, which expires after the lease duration, unless it is renewed by the owner. Tasks with an expired
+ * lease can be claimed again by any process, so tasks of a process, which was terminated, are not lost. Claims are done in an immediate transaction, so
+ * only one process at a time can claim tasks and a task is never claimed by two processes at the same time.
+ * 
+ * The count of claimed tasks per restriction key is kept in a counter table in the same database, so the maximum connection count of a restriction key is
+ * enforced over all processes. The database is opened in WAL mode, so reading does not block the claims of other processes.
+ * 
+ * @param <T> Task Type
+ */
+public class SQLiteQueueStore<T> extends SQLiteDB<StoredTask<T>> {
+	/**
+	 * Default lease duration in milliseconds
+	 */
+	public static final long DEFAULT_LEASE_DURATION = 60000;
+
+	/**
+	 * Time in milliseconds to wait for a lock held by another process
+	 */
+	private static final int BUSY_TIMEOUT = 30000;
+
+	/**
+	 * Task Serializer
+	 */
+	private final QueueTaskSerializer<T> serializer;
+
+	/**
+	 * Name of the counter table
+	 */
+	private final String counterTableName;
+
+	/**
+	 * Constructor
+	 * 
+	 * @param databaseFile Path to the database File
+	 * @param tableName Table Name
+	 * @param serializer Task Serializer
+	 */
+	public SQLiteQueueStore(String databaseFile, String tableName, QueueTaskSerializer<T> serializer) {
+		super(databaseFile, tableName, false, false, 0);
+		this.serializer = serializer;
+		this.counterTableName = tableName + "_counters";
+		// Tables are created without calling any overridable methods, because the object is not fully initialized yet
+		try (Connection con = openConnection(databaseFile)) {
+			createTables(con, tableName, counterTableName);
+		} catch (ClassNotFoundException | SQLException e) {
+			logger.error("Could not create database tables: {}", tableName, e);
+		}
+	}
+
+	@Override
+	protected Connection getDatabaseConnection() throws ClassNotFoundException, SQLException {
+		SQLiteDBOperationEvent event = beginOperationEvent("Connect");
+		try {
+			Connection con = openConnection(databaseFile);
+			event.successful = true;
+			return con;
+		} finally {
+			commitOperationEvent(event);
+		}
+	}
+
+	/**
+	 * @param databaseFile Path to the database File
+	 * @return Connection
+	 * @throws ClassNotFoundException
+	 * @throws SQLException
+	 */
+	private static Connection openConnection(String databaseFile) throws ClassNotFoundException, SQLException {
+		// Load sqlite-jdbc-driver
+		Class.forName("org.sqlite.JDBC");
+		SQLiteConfig config = new SQLiteConfig();
+		config.setJournalMode(SQLiteConfig.JournalMode.WAL);
+		config.setSynchronous(SQLiteConfig.SynchronousMode.NORMAL);
+		config.setBusyTimeout(BUSY_TIMEOUT);
+		// Transactions take the write lock directly, so that transactions of two processes can't fail with a deadlock when upgrading their locks
+		config.setTransactionMode(SQLiteConfig.TransactionMode.IMMEDIATE);
+		// Connect to db
+		return DriverManager.getConnection("jdbc:sqlite:" + databaseFile, config.toProperties());
+	}
+
+	@Override
+	protected boolean createDatabaseIfNotExist() {
+		writeLock.lock();
+		try (Connection con = getDatabaseConnection()) {
+			createTables(con, tableName, counterTableName);
+			return true;
+		} catch (ClassNotFoundException | SQLException e) {
+			logger.error("Could not create database tables: {}", tableName, e);
+			return false;
+		} finally {
+			writeLock.unlock();
+		}
+	}
+
+	/**
+	 * @param con Connection
+	 * @param tableName Table Name
+	 * @param counterTableName Name of the counter table
+	 * @throws SQLException
+	 */
+	private static void createTables(Connection con, String tableName, String counterTableName) throws SQLException {
+		String createTableSQL = "CREATE TABLE IF NOT EXISTS " + tableName
+				+ " (id INTEGER PRIMARY KEY AUTOINCREMENT, taskId TEXT NOT NULL UNIQUE, restrictionKey TEXT NOT NULL, maxConnectionCount INTEGER NOT NULL, priority INTEGER NOT NULL, data BLOB NOT NULL, owner TEXT, leaseExpiry INTEGER NOT NULL DEFAULT 0, claimCount INTEGER NOT NULL DEFAULT 0)";
+		String createClaimIndexSQL = "CREATE INDEX IF NOT EXISTS " + tableName + "_claim ON " + tableName + " (owner, priority DESC, id)";
+		String createLeaseIndexSQL = "CREATE INDEX IF NOT EXISTS " + tableName + "_lease ON " + tableName + " (leaseExpiry) WHERE owner IS NOT NULL";
+		String createCounterTableSQL = "CREATE TABLE IF NOT EXISTS " + counterTableName + " (restrictionKey TEXT PRIMARY KEY, count INTEGER NOT NULL) WITHOUT ROWID";
+		try (Statement statement = con.createStatement()) {
+			statement.executeUpdate(createTableSQL);
+			statement.executeUpdate(createClaimIndexSQL);
+			statement.executeUpdate(createLeaseIndexSQL);
+			statement.executeUpdate(createCounterTableSQL);
+		}
+	}
+
+	@Override
+	protected StoredTask<T> convertResultSetToObject(ResultSet result) throws SQLException {
+		T task;
+		try {
+			task = serializer.deserialize(result.getBytes("data"));
+		} catch (IOException e) {
+			throw new SQLException("Could not deserialize task: " + result.getString("taskId"), e);
+		}
+		return new StoredTask<>(result.getLong("id"), task, result.getString("restrictionKey"), result.getInt("maxConnectionCount"), result.getInt("priority"),
+				result.getString("owner"), result.getLong("leaseExpiry"), result.getInt("claimCount"));
+	}
+
+	/**
+	 * Add task to the store
+	 * 
+	 * @param task Task
+	 * @param restrictionKey Restriction Key
+	 * @param maxConnectionCount Maximum count of claimed tasks with the same restriction key over all processes or 0 if not limited
+	 * @param priority Priority (Higher value means higher priority)
+	 * @return True if the task was added, false if the task is already in the store or an error occurred
+	 */
+	public boolean addTask(T task, String restrictionKey, int maxConnectionCount, int priority) {
+		return insertEntry(new StoredTask<>(task, restrictionKey, maxConnectionCount, priority));
+	}
+
+	/**
+	 * Claims unclaimed tasks and tasks with an expired lease in the order of their priority and the order they were added. Tasks with a restriction key,
+	 * which reached its maximum connection count, are skipped.
+	 * 
+	 * @param owner Owner, for example an ID of the process
+	 * @param maxCount Maximum count of tasks to claim
+	 * @param leaseDuration Lease duration in milliseconds
+	 * @return Claimed tasks or an empty list if no tasks could be claimed or an error occurred
+	 */
+	public List<StoredTask<T>> claimTasks(String owner, int maxCount, long leaseDuration) {
+		List<StoredTask<T>> claimedTasks = new ArrayList<>();
+		if (maxCount <= 0) {
+			return claimedTasks;
+		}
+		/*
+		 * The tasks of each restriction key are numbered in the order they are claimed and only as many tasks as the restriction key has free slots are
+		 * selected, so tasks, which can't be claimed, don't take the place of claimable tasks of other restriction keys. The task data is only read for the
+		 * selected tasks. Tasks of the same restriction key with different maximum connection counts could still exceed the count, so the counts are also
+		 * checked while claiming.
+		 */
+		String selectSQL = "SELECT t.* FROM " + tableName + " t JOIN (SELECT id FROM (SELECT t.id, t.priority, t.maxConnectionCount, IFNULL(c.count, 0) AS claimedCount,"
+				+ " ROW_NUMBER() OVER (PARTITION BY t.restrictionKey ORDER BY t.priority DESC, t.id) AS keyRank FROM " + tableName + " t LEFT JOIN "
+				+ counterTableName + " c ON c.restrictionKey = t.restrictionKey WHERE t.owner IS NULL)"
+				+ " WHERE maxConnectionCount <= 0 OR keyRank <= maxConnectionCount - claimedCount ORDER BY priority DESC, id LIMIT ?) s ON s.id = t.id"
+				+ " ORDER BY t.priority DESC, t.id";
+		String claimSQL = "UPDATE " + tableName + " SET owner = ?, leaseExpiry = ?, claimCount = claimCount + 1 WHERE id = ? AND owner IS NULL";
+		SQLiteDBOperationEvent event = beginOperationEvent("Claim");
+		writeLock.lock();
+		try (Connection con = getDatabaseConnection()) {
+			con.setAutoCommit(false);
+			try {
+				long now = System.currentTimeMillis();
+				expireLeases(con, now);
+				Map<String, Integer> counts = getClaimedCounts(con);
+				Map<String, Integer> changedCounts = new HashMap<>();
+				long leaseExpiry = now + leaseDuration;
+				try (PreparedStatement selectStatement = con.prepareStatement(selectSQL); PreparedStatement claimStatement = con.prepareStatement(claimSQL)) {
+					selectStatement.setInt(1, maxCount);
+					try (ResultSet result = executeQuery(selectStatement, "SelectClaimableTasks")) {
+						while (claimedTasks.size() < maxCount && result.next()) {
+							String restrictionKey = result.getString("restrictionKey");
+							int maxConnectionCount = result.getInt("maxConnectionCount");
+							int count = counts.getOrDefault(restrictionKey, 0);
+							if (maxConnectionCount > 0 && count >= maxConnectionCount) {
+								continue;
+							}
+							StoredTask<T> storedTask;
+							try {
+								storedTask = convertResultSetToObject(result);
+							} catch (SQLException e) {
+								logger.error("Task could not be claimed: {}", result.getString("taskId"), e);
+								continue;
+							}
+							claimStatement.setString(1, owner);
+							claimStatement.setLong(2, leaseExpiry);
+							claimStatement.setLong(3, storedTask.id());
+							claimStatement.addBatch();
+							counts.put(restrictionKey, count + 1);
+							changedCounts.put(restrictionKey, count + 1);
+							claimedTasks.add(new StoredTask<>(storedTask.id(), storedTask.task(), restrictionKey, maxConnectionCount, storedTask.priority(), owner, leaseExpiry,
+									storedTask.claimCount() + 1));
+						}
+					}
+					if (!claimedTasks.isEmpty()) {
+						executeBatch(claimStatement, "ClaimTasks");
+					}
+				}
+				updateClaimedCounts(con, changedCounts);
+				con.commit();
+				event.successful = true;
+				return claimedTasks;
+			} catch (SQLException e) {
+				con.rollback();
+				throw e;
+			}
+		} catch (ClassNotFoundException | SQLException e) {
+			logger.error("Could not claim tasks from database '{}'", databaseFile, e);
+			return new ArrayList<>();
+		} finally {
+			writeLock.unlock();
+			commitOperationEvent(event);
+		}
+	}
+
+	/**
+	 * Renews the leases of all tasks claimed by the owner
+	 * 
+	 * @param owner Owner
+	 * @param leaseDuration Lease duration in milliseconds
+	 * @return Count of renewed leases or -1 if an error occurred
+	 */
+	public int renewLeases(String owner, long leaseDuration) {
+		String sql = "UPDATE " + tableName + " SET leaseExpiry = ? WHERE owner = ?";
+		SQLiteDBOperationEvent event = beginOperationEvent("RenewLeases");
+		writeLock.lock();
+		try (Connection con = getDatabaseConnection(); PreparedStatement statement = con.prepareStatement(sql)) {
+			statement.setLong(1, System.currentTimeMillis() + leaseDuration);
+			statement.setString(2, owner);
+			int count = executeUpdate(statement, "RenewLeases");
+			event.successful = true;
+			return count;
+		} catch (ClassNotFoundException | SQLException e) {
+			logger.error("Could not renew leases in database '{}'", databaseFile, e);
+			return -1;
+		} finally {
+			writeLock.unlock();
+			commitOperationEvent(event);
+		}
+	}
+
+	/**
+	 * Removes the completed task from the store, if it is still claimed by the owner
+	 * 
+	 * @param owner Owner
+	 * @param task Task
+	 * @return True if the task was removed, false if the task is not claimed by the owner, for example because the lease expired, or an error occurred
+	 */
+	public boolean completeTask(String owner, T task) {
+		return finishClaim(owner, task, "DELETE FROM " + tableName + " WHERE id = ?", "Complete");
+	}
+
+	/**
+	 * Releases the claim of the task, so that the task can be claimed again by any process
+	 * 
+	 * @param owner Owner
+	 * @param task Task
+	 * @return True if the task was released, false if the task is not claimed by the owner or an error occurred
+	 */
+	public boolean releaseTask(String owner, T task) {
+		return finishClaim(owner, task, "UPDATE " + tableName + " SET owner = NULL, leaseExpiry = 0 WHERE id = ?", "Release");
+	}
+
+	/**
+	 * Releases the claims of all tasks of the owner
+	 * 
+	 * @param owner Owner
+	 * @return Count of released tasks or -1 if an error occurred
+	 */
+	public int releaseTasks(String owner) {
+		String selectSQL = "SELECT restrictionKey, COUNT(*) AS count FROM " + tableName + " WHERE owner = ? GROUP BY restrictionKey";
+		String releaseSQL = "UPDATE " + tableName + " SET owner = NULL, leaseExpiry = 0 WHERE owner = ?";
+		SQLiteDBOperationEvent event = beginOperationEvent("Release");
+		writeLock.lock();
+		try (Connection con = getDatabaseConnection()) {
+			con.setAutoCommit(false);
+			try {
+				Map<String, Integer> releasedCounts = new HashMap<>();
+				try (PreparedStatement statement = con.prepareStatement(selectSQL)) {
+					statement.setString(1, owner);
+					try (ResultSet result = executeQuery(statement, "SelectClaimedCountsOfOwner")) {
+						while (result.next()) {
+							releasedCounts.put(result.getString("restrictionKey"), result.getInt("count"));
+						}
+					}
+				}
+				int count;
+				try (PreparedStatement statement = con.prepareStatement(releaseSQL)) {
+					statement.setString(1, owner);
+					count = executeUpdate(statement, "ReleaseTasks");
+				}
+				decrementClaimedCounts(con, releasedCounts);
+				con.commit();
+				event.successful = true;
+				return count;
+			} catch (SQLException e) {
+				con.rollback();
+				throw e;
+			}
+		} catch (ClassNotFoundException | SQLException e) {
+			logger.error("Could not release tasks in database '{}'", databaseFile, e);
+			return -1;
+		} finally {
+			writeLock.unlock();
+			commitOperationEvent(event);
+		}
+	}
+
+	/**
+	 * Returns the count of claimed tasks with the restriction key over all processes, including tasks with an expired lease, which were not claimed again yet
+	 * 
+	 * @param restrictionKey Restriction Key
+	 * @return Count of claimed tasks or -1 if an error occurred
+	 */
+	public int getClaimedCount(String restrictionKey) {
+		String sql = "SELECT count FROM " + counterTableName + " WHERE restrictionKey = ?";
+		readLock.lock();
+		try (Connection con = getDatabaseConnection(); PreparedStatement statement = con.prepareStatement(sql)) {
+			statement.setString(1, restrictionKey);
+			try (ResultSet result = executeQuery(statement, "SelectClaimedCount")) {
+				return result.next() ? result.getInt("count") : 0;
+			}
+		} catch (ClassNotFoundException | SQLException e) {
+			logger.error("Could not get claimed count from database '{}'", databaseFile, e);
+			return -1;
+		} finally {
+			readLock.unlock();
+		}
+	}
+
+	/**
+	 * Returns the count of tasks in the store, including claimed tasks
+	 * 
+	 * @return Count of tasks or -1 if an error occurred
+	 */
+	public int getTaskCount() {
+		String sql = "SELECT COUNT(*) FROM " + tableName;
+		readLock.lock();
+		try (Connection con = getDatabaseConnection(); PreparedStatement statement = con.prepareStatement(sql); ResultSet result = executeQuery(statement, "SelectTaskCount")) {
+			return result.next() ? result.getInt(1) : 0;
+		} catch (ClassNotFoundException | SQLException e) {
+			logger.error("Could not get task count from database '{}'", databaseFile, e);
+			return -1;
+		} finally {
+			readLock.unlock();
+		}
+	}
+
+	/**
+	 * Removes the claim of the task, if it is claimed by the owner, and decrements the counter of the restriction key
+	 * 
+	 * @param owner Owner
+	 * @param task Task
+	 * @param sql SQL Statement, which removes the claim of the task with the ID given as first parameter
+	 * @param operation Operation
+	 * @return True if the claim was removed, false if the task is not claimed by the owner or an error occurred
+	 */
+	private boolean finishClaim(String owner, T task, String sql, String operation) {
+		String selectSQL = "SELECT id, restrictionKey FROM " + tableName + " WHERE taskId = ? AND owner = ?";
+		SQLiteDBOperationEvent event = beginOperationEvent(operation);
+		writeLock.lock();
+		try (Connection con = getDatabaseConnection()) {
+			con.setAutoCommit(false);
+			try {
+				long id;
+				String restrictionKey;
+				try (PreparedStatement statement = con.prepareStatement(selectSQL)) {
+					statement.setString(1, serializer.getTaskId(task));
+					statement.setString(2, owner);
+					try (ResultSet result = executeQuery(statement, "SelectClaimedTask")) {
+						if (!result.next()) {
+							con.rollback();
+							event.successful = true;
+							return false;
+						}
+						id = result.getLong("id");
+						restrictionKey = result.getString("restrictionKey");
+					}
+				}
+				try (PreparedStatement statement = con.prepareStatement(sql)) {
+					statement.setLong(1, id);
+					executeUpdate(statement, operation + "Task");
+				}
+				decrementClaimedCounts(con, Map.of(restrictionKey, 1));
+				con.commit();
+				event.successful = true;
+				return true;
+			} catch (SQLException e) {
+				con.rollback();
+				throw e;
+			}
+		} catch (ClassNotFoundException | SQLException e) {
+			logger.error("Could not update task '{}' in database '{}'", task, databaseFile, e);
+			return false;
+		} finally {
+			writeLock.unlock();
+			commitOperationEvent(event);
+		}
+	}
+
+	/**
+	 * Removes the claims of tasks with an expired lease and decrements the counters of their restriction keys. Must be called in a transaction.
+	 * 
+	 * @param con Connection
+	 * @param now Current time in milliseconds
+	 * @throws SQLException
+	 */
+	private void expireLeases(Connection con, long now) throws SQLException {
+		String selectSQL = "SELECT restrictionKey, COUNT(*) AS count FROM " + tableName + " WHERE owner IS NOT NULL AND leaseExpiry <= ? GROUP BY restrictionKey";
+		String expireSQL = "UPDATE " + tableName + " SET owner = NULL, leaseExpiry = 0 WHERE owner IS NOT NULL AND leaseExpiry <= ?";
+		Map<String, Integer> expiredCounts = new HashMap<>();
+		try (PreparedStatement statement = con.prepareStatement(selectSQL)) {
+			statement.setLong(1, now);
+			try (ResultSet result = executeQuery(statement, "SelectExpiredLeases")) {
+				while (result.next()) {
+					expiredCounts.put(result.getString("restrictionKey"), result.getInt("count"));
+				}
+			}
+		}
+		if (expiredCounts.isEmpty()) {
+			return;
+		}
+		try (PreparedStatement statement = con.prepareStatement(expireSQL)) {
+			statement.setLong(1, now);
+			int count = executeUpdate(statement, "ExpireLeases");
+			logger.info("Leases of {} tasks expired", count);
+		}
+		decrementClaimedCounts(con, expiredCounts);
+	}
+
+	/**
+	 * @param con Connection
+	 * @return Count of claimed tasks by restriction key
+	 * @throws SQLException
+	 */
+	private Map<String, Integer> getClaimedCounts(Connection con) throws SQLException {
+		Map<String, Integer> counts = new HashMap<>();
+		try (PreparedStatement statement = con.prepareStatement("SELECT restrictionKey, count FROM " + counterTableName + " WHERE count > 0");
+				ResultSet result = executeQuery(statement, "SelectClaimedCounts")) {
+			while (result.next()) {
+				counts.put(result.getString("restrictionKey"), result.getInt("count"));
+			}
+		}
+		return counts;
+	}
+
+	/**
+	 * @param con Connection
+	 * @param counts Count of claimed tasks by restriction key
+	 * @throws SQLException
+	 */
+	private void updateClaimedCounts(Connection con, Map<String, Integer> counts) throws SQLException {
+		if (counts.isEmpty()) {
+			return;
+		}
+		String sql = "INSERT INTO " + counterTableName + " (restrictionKey, count) VALUES (?, ?) ON CONFLICT(restrictionKey) DO UPDATE SET count = excluded.count";
+		try (PreparedStatement statement = con.prepareStatement(sql)) {
+			for (Map.Entry<String, Integer> entry : counts.entrySet()) {
+				statement.setString(1, entry.getKey());
+				statement.setInt(2, entry.getValue());
+				statement.addBatch();
+			}
+			executeBatch(statement, "UpdateClaimedCounts");
+		}
+	}
+
+	/**
+	 * Decrements the counters and removes counters, which reached 0, so that the counter table does not grow with every restriction key ever seen
+	 * 
+	 * @param con Connection
+	 * @param counts Count to subtract by restriction key
+	 * @throws SQLException
+	 */
+	private void decrementClaimedCounts(Connection con, Map<String, Integer> counts) throws SQLException {
+		if (counts.isEmpty()) {
+			return;
+		}
+		String updateSQL = "UPDATE " + counterTableName + " SET count = MAX(count - ?, 0) WHERE restrictionKey = ?";
+		String deleteSQL = "DELETE FROM " + counterTableName + " WHERE count <= 0";
+		try (PreparedStatement statement = con.prepareStatement(updateSQL)) {
+			for (Map.Entry<String, Integer> entry : counts.entrySet()) {
+				statement.setInt(1, entry.getValue());
+				statement.setString(2, entry.getKey());
+				statement.addBatch();
+			}
+			executeBatch(statement, "DecrementClaimedCounts");
+		}
+		try (PreparedStatement statement = con.prepareStatement(deleteSQL)) {
+			executeUpdate(statement, "DeleteClaimedCounts");
+		}
+	}
+
+	@Override
+	public List<StoredTask<T>> getAllEntries() {
+		List<StoredTask<T>> entries = new ArrayList<>();
+		String sql = "SELECT * FROM " + tableName + " ORDER BY priority DESC, id";
+		readLock.lock();
+		try (Connection con = getDatabaseConnection(); PreparedStatement statement = con.prepareStatement(sql); ResultSet result = executeQuery(statement, "SelectAllTasks")) {
+			while (result.next()) {
+				entries.add(convertResultSetToObject(result));
+			}
+		} catch (ClassNotFoundException | SQLException e) {
+			logger.error("Could not get entries from database '{}'", databaseFile, e);
+		} finally {
+			readLock.unlock();
+		}
+		return entries;
+	}
+
+	@Override
+	public StoredTask<T> getEntry(int id) {
+		String sql = "SELECT * FROM " + tableName + " WHERE id = ?";
+		readLock.lock();
+		try (Connection con = getDatabaseConnection(); PreparedStatement statement = con.prepareStatement(sql)) {
+			statement.setInt(1, id);
+			try (ResultSet result = executeQuery(statement, "SelectTask")) {
+				return result.next() ? convertResultSetToObject(result) : null;
+			}
+		} catch (ClassNotFoundException | SQLException e) {
+			logger.error("Could not get entry {} from database '{}'", id, databaseFile, e);
+			return null;
+		} finally {
+			readLock.unlock();
+		}
+	}
+
+	@Override
+	public boolean insertEntry(StoredTask<T> entry) {
+		return insertEntries(List.of(entry));
+	}
+
+	/**
+	 * Inserts the given entries into the database. Entries of tasks, which are already in the database, are ignored.
+	 * 
+	 * @param entries Entries
+	 * @return True if at least one entry was inserted, false otherwise
+	 */
+	@Override
+	public boolean insertEntries(List<StoredTask<T>> entries) {
+		String sql = "INSERT OR IGNORE INTO " + tableName + " (taskId, restrictionKey, maxConnectionCount, priority, data) VALUES (?, ?, ?, ?, ?)";
+		SQLiteDBOperationEvent event = beginOperationEvent("Insert");
+		writeLock.lock();
+		try (Connection con = getDatabaseConnection()) {
+			con.setAutoCommit(false);
+			try (PreparedStatement statement = con.prepareStatement(sql)) {
+				for (StoredTask<T> entry : entries) {
+					statement.setString(1, serializer.getTaskId(entry.task()));
+					statement.setString(2, entry.restrictionKey());
+					statement.setInt(3, entry.maxConnectionCount());
+					statement.setInt(4, entry.priority());
+					statement.setBytes(5, serializer.serialize(entry.task()));
+					statement.addBatch();
+				}
+				int insertedCount = 0;
+				for (int count : executeBatch(statement, "InsertTasks")) {
+					insertedCount += Math.max(count, 0);
+				}
+				con.commit();
+				event.successful = true;
+				return insertedCount > 0;
+			} catch (IOException | SQLException e) {
+				con.rollback();
+				logger.error("Could not insert entries into database '{}'", databaseFile, e);
+				return false;
+			}
+		} catch (ClassNotFoundException | SQLException e) {
+			logger.error("Could not insert entries into database '{}'", databaseFile, e);
+			return false;
+		} finally {
+			writeLock.unlock();
+			commitOperationEvent(event);
+		}
+	}
+
+	@Override
+	public boolean updateEntry(StoredTask<T> entry) {
+		return updateEntries(List.of(entry));
+	}
+
+	/**
+	 * Updates restriction key, maximum connection count and priority of the given entries. The claims of the tasks are not changed.
+	 * 
+	 * @param entries Entries
+	 * @return True if successful, false otherwise
+	 */
+	@Override
+	public boolean updateEntries(List<StoredTask<T>> entries) {
+		String sql = "UPDATE " + tableName + " SET restrictionKey = ?, maxConnectionCount = ?, priority = ? WHERE id = ? AND owner IS NULL";
+		writeLock.lock();
+		try (Connection con = getDatabaseConnection()) {
+			con.setAutoCommit(false);
+			try (PreparedStatement statement = con.prepareStatement(sql)) {
+				for (StoredTask<T> entry : entries) {
+					statement.setString(1, entry.restrictionKey());
+					statement.setInt(2, entry.maxConnectionCount());
+					statement.setInt(3, entry.priority());
+					statement.setLong(4, entry.id());
+					statement.addBatch();
+				}
+				executeBatch(statement, "UpdateTasks");
+				con.commit();
+				return true;
+			} catch (SQLException e) {
+				con.rollback();
+				throw e;
+			}
+		} catch (ClassNotFoundException | SQLException e) {
+			logger.error("Could not update entries in database '{}'", databaseFile, e);
+			return false;
+		} finally {
+			writeLock.unlock();
+		}
+	}
+
+	@Override
+	public boolean deleteEntry(StoredTask<T> entry) {
+		return deleteEntries(List.of(entry));
+	}
+
+	/**
+	 * Deletes the given entries from the database. Counters of claimed entries are decremented.
+	 * 
+	 * @param entries Entries
+	 * @return True if successful, false otherwise
+	 */
+	@Override
+	public boolean deleteEntries(List<StoredTask<T>> entries) {
+		String selectSQL = "SELECT restrictionKey FROM " + tableName + " WHERE id = ? AND owner IS NOT NULL";
+		String deleteSQL = "DELETE FROM " + tableName + " WHERE id = ?";
+		writeLock.lock();
+		try (Connection con = getDatabaseConnection()) {
+			con.setAutoCommit(false);
+			try (PreparedStatement selectStatement = con.prepareStatement(selectSQL); PreparedStatement deleteStatement = con.prepareStatement(deleteSQL)) {
+				Map<String, Integer> claimedCounts = new HashMap<>();
+				for (StoredTask<T> entry : entries) {
+					selectStatement.setLong(1, entry.id());
+					try (ResultSet result = executeQuery(selectStatement, "SelectClaimedTask")) {
+						if (result.next()) {
+							claimedCounts.merge(result.getString("restrictionKey"), 1, Integer::sum);
+						}
+					}
+					deleteStatement.setLong(1, entry.id());
+					deleteStatement.addBatch();
+				}
+				executeBatch(deleteStatement, "DeleteTasks");
+				decrementClaimedCounts(con, claimedCounts);
+				con.commit();
+				return true;
+			} catch (SQLException e) {
+				con.rollback();
+				throw e;
+			}
+		} catch (ClassNotFoundException | SQLException e) {
+			logger.error("Could not delete entries from database '{}'", databaseFile, e);
+			return false;
+		} finally {
+			writeLock.unlock();
+		}
+	}
+}
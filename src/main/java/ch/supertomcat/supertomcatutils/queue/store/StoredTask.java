@@ -0,0 +1,35 @@
+package ch.supertomcat.supertomcatutils.queue.store;
+
+/**
+ * Task stored in a {@link SQLiteQueueStore}
+ * 
+ * @param <T> Task Type
+ * @param id ID in database or 0 if not yet stored
+ * @param task Task
+ * @param restrictionKey Restriction Key
+ * @param maxConnectionCount Maximum count of claimed tasks with the same restriction key over all processes or 0 if not limited
+ * @param priority Priority (Higher value means higher priority)
+ * @param owner Owner, which claimed the task or null if the task is not claimed
+ * @param leaseExpiry Time in milliseconds when the claim of the task expires
+ * @param claimCount Count of times the task was claimed
+ */
+public record StoredTask<T>(long id, T task, String restrictionKey, int maxConnectionCount, int priority, String owner, long leaseExpiry, int claimCount) {
+	/**
+	 * Constructor for a task, which is not yet stored
+	 * 
+	 * @param task Task
+	 * @param restrictionKey Restriction Key
+	 * @param maxConnectionCount Maximum count of claimed tasks with the same restriction key over all processes or 0 if not limited
+	 * @param priority Priority (Higher value means higher priority)
+	 */
+	public StoredTask(T task, String restrictionKey, int maxConnectionCount, int priority) {
+		this(0, task, restrictionKey, maxConnectionCount, priority, null, 0, 0);
+	}
+
+	/**
+	 * @return True if the task is claimed, false otherwise
+	 */
+	public boolean isClaimed() {
+		return owner != null;
+	}
+}
@@ -0,0 +1,28 @@
+package ch.supertomcat.supertomcatutils.io;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+
+class BandwidthLimiterTest {
+
+	@Test
+	void testNotLimited() {
+		BandwidthLimiter bandwidthLimiter = new BandwidthLimiter(0);
+		assertEquals(0, bandwidthLimiter.reserve(Long.MAX_VALUE / 2));
+	}
+
+	@Test
+	void testBurstAndWaitTime() {
+		BandwidthLimiter bandwidthLimiter = new BandwidthLimiter(1000, 1000);
+		// Bucket is full, so the whole capacity can be used without waiting
+		assertEquals(0, bandwidthLimiter.reserve(1000));
+		// Bucket is empty, so the next 500 bytes need about half a second
+		long waitTime = bandwidthLimiter.reserve(500);
+		assertTrue(waitTime > TimeUnit.MILLISECONDS.toNanos(400), "Wait time too short: " + waitTime);
+		assertTrue(waitTime <= TimeUnit.MILLISECONDS.toNanos(500), "Wait time too long: " + waitTime);
+	}
+}
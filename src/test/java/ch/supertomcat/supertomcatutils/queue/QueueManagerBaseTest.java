@@ -0,0 +1,771 @@
+package ch.supertomcat.supertomcatutils.queue;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import ch.supertomcat.supertomcatutils.application.ApplicationMain;
+import ch.supertomcat.supertomcatutils.application.ApplicationProperties;
+import ch.supertomcat.supertomcatutils.queue.journal.QueueJournal;
+import ch.supertomcat.supertomcatutils.queue.journal.QueueTaskSerializer;
+import ch.supertomcat.supertomcatutils.queue.metrics.QueueMetricsSnapshot;
+import ch.supertomcat.supertomcatutils.queue.store.SQLiteQueueStore;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+
+class QueueManagerBaseTest {
+	private TestQueueManager manager;
+
+	@AfterEach
+	void stopManager() {
+		if (manager != null) {
+			manager.stop();
+		}
+	}
+
+	@ParameterizedTest
+	@CsvSource({ "false, false", "true, false", "false, true", "true, true" })
+	void testRestrictionsAreRespected(boolean useVirtualThreads, boolean eventDrivenScheduling) throws InterruptedException {
+		int taskCount = 200;
+		manager = new TestQueueManager(4, 2, taskCount);
+		manager.setUseVirtualThreads(useVirtualThreads);
+		manager.setEventDrivenScheduling(eventDrivenScheduling);
+		manager.init();
+
+		List<String> tasks = new ArrayList<>();
+		for (int i = 0; i < taskCount; i++) {
+			tasks.add("host" + (i % 5) + "/" + i);
+		}
+		manager.addTasksToQueue(tasks);
+
+		assertTrue(manager.completedLatch.await(30, TimeUnit.SECONDS));
+		assertEquals(taskCount, manager.completedTasks.size());
+		assertTrue(manager.maxRunningTotal.get() <= 4);
+		for (AtomicInteger maxRunning : manager.maxRunningPerHost.values()) {
+			assertTrue(maxRunning.get() <= 2);
+		}
+		assertEquals(0, manager.getQueueSize());
+	}
+
+	@ParameterizedTest
+	@ValueSource(booleans = { false, true })
+	void testTasksOfHostAreExecutedInOrder(boolean eventDrivenScheduling) throws InterruptedException {
+		int taskCount = 50;
+		manager = new TestQueueManager(1, 1, taskCount);
+		manager.setEventDrivenScheduling(eventDrivenScheduling);
+		manager.init();
+
+		List<String> tasks = new ArrayList<>();
+		for (int i = 0; i < taskCount; i++) {
+			tasks.add("host" + (i % 3) + "/" + i);
+		}
+		manager.addTasksToQueue(tasks);
+
+		assertTrue(manager.completedLatch.await(30, TimeUnit.SECONDS));
+		assertEquals(tasks, manager.completedTasks);
+	}
+
+	@Test
+	void testDuplicateTasksAreIgnored() throws InterruptedException {
+		manager = new TestQueueManager(1, 1, 2);
+		manager.addTaskToQueue("host0/0");
+		manager.addTaskToQueue("host0/0");
+		manager.addTasksToQueue(List.of("host0/1", "host0/0", "host0/1"));
+		assertEquals(2, manager.getQueueSize());
+
+		manager.init();
+		assertTrue(manager.completedLatch.await(30, TimeUnit.SECONDS));
+		assertEquals(List.of("host0/0", "host0/1"), manager.completedTasks);
+	}
+
+	@Test
+	void testTaskCanBeAddedAgainAfterExecution() throws InterruptedException {
+		manager = new TestQueueManager(1, 1, 2);
+		manager.init();
+		manager.addTaskToQueue("host0/0");
+		while (manager.completedLatch.getCount() > 1) {
+			Thread.sleep(1);
+		}
+		manager.addTaskToQueue("host0/0");
+		assertTrue(manager.completedLatch.await(30, TimeUnit.SECONDS));
+		assertEquals(List.of("host0/0", "host0/0"), manager.completedTasks);
+	}
+
+	@Test
+	void testTasksWithHigherPriorityAreExecutedFirst() throws InterruptedException {
+		manager = new TestQueueManager(1, 1, 4);
+		manager.addTasksToQueue(List.of("host0/0", "host0/1", "host1/2"));
+		manager.addTaskToQueue("host1/urgent");
+		manager.init();
+		assertTrue(manager.completedLatch.await(30, TimeUnit.SECONDS));
+		assertEquals(List.of("host1/urgent", "host0/0", "host0/1", "host1/2"), manager.completedTasks);
+	}
+
+	@Test
+	void testPriorityAging() throws InterruptedException {
+		manager = new TestQueueManager(1, 1, 3);
+		manager.setPriorityAgingTime(0);
+		manager.addTasksToQueue(List.of("host0/0", "host1/1"));
+		manager.addTaskToQueue("host1/urgent");
+		manager.init();
+		assertTrue(manager.completedLatch.await(30, TimeUnit.SECONDS));
+		assertEquals(List.of("host0/0", "host1/1", "host1/urgent"), manager.completedTasks);
+	}
+
+	@ParameterizedTest
+	@ValueSource(booleans = { false, true })
+	void testMinRequestInterval(boolean eventDrivenScheduling) throws InterruptedException {
+		manager = new TestQueueManager(4, 4, 4);
+		manager.setEventDrivenScheduling(eventDrivenScheduling);
+		manager.init();
+		manager.addTasksToQueue(List.of("slow/0", "slow/1", "slow/2", "fast/3"));
+		assertTrue(manager.completedLatch.await(30, TimeUnit.SECONDS));
+
+		// The start times are taken in the task, so allow some tolerance for the time it takes until the thread executes the task
+		long minInterval = TimeUnit.MILLISECONDS.toNanos(90);
+		assertTrue(manager.startTimes.get("fast/3") - manager.startTimes.get("slow/0") < minInterval);
+		assertTrue(manager.startTimes.get("slow/1") - manager.startTimes.get("slow/0") >= minInterval);
+		assertTrue(manager.startTimes.get("slow/2") - manager.startTimes.get("slow/1") >= minInterval);
+	}
+
+	@Test
+	void testRejectedTaskDoesNotUseUpRequestPermit() throws InterruptedException {
+		manager = new TestQueueManager(1, 1, 0);
+		manager.init();
+		// Thread pool rejects all tasks
+		manager.getThreadPool().shutdown();
+		manager.addTaskToQueue("slow/0");
+		long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(30);
+		while (manager.removedTasks.isEmpty() && System.nanoTime() < deadline) {
+			Thread.sleep(10);
+		}
+		assertEquals(List.of("slow/0"), manager.removedTasks);
+		synchronized (manager.syncObject) {
+			assertFalse(manager.requestPermitTimes.containsKey("slow"));
+		}
+	}
+
+	@Test
+	void testPassedRequestPermitTimesAreRemoved() throws InterruptedException {
+		manager = new TestQueueManager(2, 2, 3);
+		manager.init();
+		manager.addTasksToQueue(List.of("slow/0", "slow/1"));
+		long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(30);
+		while (manager.completedTasks.size() < 2 && System.nanoTime() < deadline) {
+			Thread.sleep(10);
+		}
+
+		// Passed permit times are removed by the next scheduling after the cleanup interval
+		Thread.sleep(1100);
+		manager.addTaskToQueue("host0/2");
+		assertTrue(manager.completedLatch.await(30, TimeUnit.SECONDS));
+		synchronized (manager.syncObject) {
+			assertTrue(manager.requestPermitTimes.isEmpty());
+		}
+	}
+
+	@Test
+	void testAdaptiveConcurrency() throws InterruptedException {
+		manager = new TestQueueManager(4, 4, 12);
+		manager.setAdaptiveConcurrency(true);
+		manager.init();
+		List<String> tasks = new ArrayList<>();
+		for (int i = 0; i < 8; i++) {
+			tasks.add("host0/fail" + i);
+			if (i < 4) {
+				tasks.add("host1/" + i);
+			}
+		}
+		manager.addTasksToQueue(tasks);
+		assertTrue(manager.completedLatch.await(30, TimeUnit.SECONDS));
+
+		assertTrue(manager.getEffectiveMaxConnectionCount("host0", 4) < 4);
+		assertTrue(manager.getEffectiveMaxConnectionCounts().containsKey("host0"));
+		assertEquals(4, manager.getEffectiveMaxConnectionCount("host1", 4));
+		assertFalse(manager.getEffectiveMaxConnectionCounts().containsKey("host1"));
+	}
+
+	@ParameterizedTest
+	@ValueSource(booleans = { false, true })
+	void testRetryWithBackoff(boolean eventDrivenScheduling) throws InterruptedException {
+		manager = new TestQueueManager(1, 1, 3);
+		manager.setEventDrivenScheduling(eventDrivenScheduling);
+		manager.setRetryBackoff(new RetryBackoff(50, 1000, 2, 0));
+		manager.init();
+		long start = System.nanoTime();
+		manager.addTaskToQueue("host0/retry");
+		assertTrue(manager.completedLatch.await(30, TimeUnit.SECONDS));
+		long duration = System.nanoTime() - start;
+
+		// First retry after 50ms, second retry after 100ms
+		assertTrue(duration >= TimeUnit.MILLISECONDS.toNanos(150));
+		assertEquals(List.of("host0/retry", "host0/retry", "host0/retry"), manager.completedTasks);
+		assertEquals(0, manager.getRetryAttempts("host0/retry"));
+		assertEquals(0, manager.getRetryQueueSize());
+	}
+
+	@Test
+	void testFairSchedulingMode() throws InterruptedException {
+		manager = new TestQueueManager(1, 1, 6);
+		manager.setSchedulingMode(QueueSchedulingMode.FAIR);
+		manager.addTasksToQueue(List.of("host0/0", "host0/1", "host0/2", "host0/3", "host1/4", "host2/5"));
+		manager.init();
+		assertTrue(manager.completedLatch.await(30, TimeUnit.SECONDS));
+		assertEquals(List.of("host0/0", "host1/4", "host2/5", "host0/1", "host0/2", "host0/3"), manager.completedTasks);
+	}
+
+	@Test
+	void testMetrics() throws InterruptedException {
+		manager = new TestQueueManager(2, 2, 5);
+		manager.getMetrics().setRestrictionMetricsEnabled(true);
+		manager.addTasksToQueue(List.of("host0/0", "host0/1", "host1/2", "host1/fail3", "host1/fail4"));
+		manager.init();
+		assertTrue(manager.completedLatch.await(30, TimeUnit.SECONDS));
+		manager.stop();
+
+		QueueMetricsSnapshot snapshot = manager.getMetrics().getSnapshot();
+		assertEquals(5, snapshot.scheduledTasks());
+		assertEquals(3, snapshot.completedTasks());
+		assertEquals(2, snapshot.failedTasks());
+		assertEquals(5, snapshot.executionTime().count());
+		assertEquals(2, snapshot.restrictions().get("host0").queueWaitTime().count());
+		assertEquals(3, snapshot.restrictions().get("host1").executionTime().count());
+		assertTrue(snapshot.executionTime().max() >= TimeUnit.MILLISECONDS.toNanos(1));
+	}
+
+	@Test
+	void testFlightRecorderEvents(@TempDir Path tempDir) throws IOException, InterruptedException {
+		manager = new TestQueueManager(1, 1, 2);
+		Path recordingFile = tempDir.resolve("queue.jfr");
+		try (Recording recording = new Recording()) {
+			recording.enable("ch.supertomcat.supertomcatutils.queue.TaskEnqueued");
+			recording.enable("ch.supertomcat.supertomcatutils.queue.TaskScheduled");
+			recording.enable("ch.supertomcat.supertomcatutils.queue.TaskCompleted");
+			recording.start();
+			manager.addTasksToQueue(List.of("host0/0", "host1/1"));
+			manager.init();
+			assertTrue(manager.completedLatch.await(30, TimeUnit.SECONDS));
+			manager.stop();
+			recording.stop();
+			recording.dump(recordingFile);
+		}
+
+		List<RecordedEvent> events = RecordingFile.readAllEvents(recordingFile);
+		assertEquals(2, events.stream().filter(e -> e.getEventType().getName().endsWith("TaskEnqueued")).count());
+		assertEquals(2, events.stream().filter(e -> e.getEventType().getName().endsWith("TaskScheduled")).count());
+		assertTrue(events.stream().anyMatch(e -> e.getEventType().getName().endsWith("TaskCompleted") && "host1".equals(e.getString("restrictionKey"))));
+	}
+
+	@Test
+	void testStateSnapshot() throws InterruptedException {
+		manager = new TestQueueManager(1, 1, 3);
+		manager.setStateSnapshotInterval(0);
+		manager.addTasksToQueue(List.of("host0/0", "host0/1", "host1/2"));
+
+		QueueStateSnapshot snapshot = manager.getStateSnapshot();
+		assertEquals(3, snapshot.queueSize());
+		assertEquals(2, snapshot.restrictions().get("host0").queuedTaskCount());
+		assertEquals(1, snapshot.restrictions().get("host1").queuedTaskCount());
+		assertEquals(List.of("host0/0", "host0/1"), manager.getQueuedTasks("host0"));
+		assertEquals(List.of("host1/2"), manager.getQueuedTasks("host1"));
+		assertEquals(List.of("host0/0", "host0/1", "host1/2"), manager.getQueue());
+		assertTrue(manager.getExecutingTasks("host0").isEmpty());
+
+		// Scheduling is requested, but nothing changed, so the version is not changed
+		manager.addTasksToQueue(List.of("host0/0"));
+		manager.setSchedulingMode(QueueSchedulingMode.FAIR);
+		assertEquals(snapshot.version(), manager.getStateSnapshot().version());
+
+		manager.init();
+		assertTrue(manager.completedLatch.await(30, TimeUnit.SECONDS));
+		manager.stop();
+		QueueStateSnapshot stoppedSnapshot = manager.getStateSnapshot();
+		assertTrue(stoppedSnapshot.version() > snapshot.version());
+		assertFalse(stoppedSnapshot.running());
+		assertEquals(0, stoppedSnapshot.queueSize());
+		assertTrue(stoppedSnapshot.restrictions().isEmpty());
+	}
+
+	@ParameterizedTest
+	@ValueSource(booleans = { false, true })
+	void testParentRestrictionsAreRespected(boolean eventDrivenScheduling) throws InterruptedException {
+		int taskCount = 60;
+		manager = new TestQueueManager(10, 2, taskCount);
+		manager.setEventDrivenScheduling(eventDrivenScheduling);
+		manager.init();
+
+		List<String> tasks = new ArrayList<>();
+		for (int i = 0; i < taskCount; i++) {
+			tasks.add("cdn" + (i % 4) + "/" + i);
+		}
+		manager.addTasksToQueue(tasks);
+
+		assertTrue(manager.completedLatch.await(30, TimeUnit.SECONDS));
+		assertEquals(taskCount, manager.completedTasks.size());
+		assertTrue(manager.maxRunningTotal.get() <= 3);
+		assertEquals(0, manager.getRestrictedCount("site"));
+		// Counters of restriction keys without executing tasks are removed
+		assertTrue(manager.getRestrictedCounts().isEmpty());
+	}
+
+	@Test
+	void testBandwidthLimitersOfIdleRestrictionKeysAreRemoved() throws InterruptedException {
+		manager = new TestQueueManager(2, 1, 3);
+		manager.addTasksToQueue(List.of("limited/0", "limited/1", "host0/2"));
+		manager.init();
+		assertTrue(manager.completedLatch.await(30, TimeUnit.SECONDS));
+		assertEquals(3, manager.completedTasks.size());
+		assertTrue(manager.restrictionBandwidthLimiters.isEmpty());
+	}
+
+	@ParameterizedTest
+	@ValueSource(booleans = { false, true })
+	void testExecutionTimeout(boolean eventDrivenScheduling) throws InterruptedException {
+		manager = new TestQueueManager(1, 1, 2);
+		manager.setEventDrivenScheduling(eventDrivenScheduling);
+		manager.setExecutionTimeout(200);
+		manager.init();
+		// The thread of the watchdog is only started for the first task with a timeout
+		assertFalse(manager.watchdog.isThreadRunning());
+		long start = System.nanoTime();
+		manager.addTasksToQueue(List.of("host0/hang", "host0/1"));
+		assertTrue(manager.completedLatch.await(30, TimeUnit.SECONDS));
+		long duration = System.nanoTime() - start;
+
+		assertEquals(List.of("host0/hang", "host0/1"), manager.completedTasks);
+		assertEquals(List.of("host0/hang"), manager.timedOutTasks);
+		assertTrue(duration >= TimeUnit.MILLISECONDS.toNanos(200));
+		assertTrue(duration < TimeUnit.SECONDS.toNanos(5));
+		assertTrue(manager.watchdog.isThreadRunning());
+
+		manager.stop();
+		assertFalse(manager.watchdog.isThreadRunning());
+	}
+
+	@Test
+	void testQueueEstimatedSizeIsDecreasedByCancelledTasks() {
+		manager = new TestQueueManager(1, 1, 0);
+		manager.addTasksToQueue(List.of("host0/0", "host1/1", "host1/2"));
+		assertTrue(manager.retryTask("host1/3"));
+		assertEquals(30, manager.getQueueEstimatedSize());
+
+		// Tasks waiting for their retry were not counted, so they must not be subtracted
+		assertEquals(3, manager.cancelTasksForRestrictionKey("host1"));
+		assertEquals(10, manager.getQueueEstimatedSize());
+		assertTrue(manager.retryTask("host0/4"));
+		assertEquals(2, manager.cancelTasks(task -> task.startsWith("host0/")));
+		assertEquals(0, manager.getQueueEstimatedSize());
+	}
+
+	@ParameterizedTest
+	@ValueSource(strings = { "ORDERED", "FAIR" })
+	void testCancelTasksForRestrictionKey(QueueSchedulingMode schedulingMode) throws InterruptedException {
+		manager = new TestQueueManager(1, 1, 3);
+		manager.setSchedulingMode(schedulingMode);
+		manager.addTasksToQueue(List.of("host0/0", "host1/1", "host0/2", "host2/3", "host1/4"));
+		assertEquals(2, manager.cancelTasksForRestrictionKey("host1"));
+		assertEquals(3, manager.getQueueSize());
+		assertEquals(List.of("host1/1", "host1/4"), manager.removedTasks);
+
+		manager.init();
+		assertTrue(manager.completedLatch.await(30, TimeUnit.SECONDS));
+		assertEquals(Set.of("host0/0", "host0/2", "host2/3"), new HashSet<>(manager.completedTasks));
+	}
+
+	@Test
+	void testCancelTasksByPredicate() throws InterruptedException {
+		manager = new TestQueueManager(1, 1, 2);
+		manager.addTasksToQueue(List.of("host0/0", "host1/1", "host0/2", "host2/3"));
+		assertEquals(2, manager.cancelTasks(task -> task.startsWith("host0/")));
+		assertEquals(0, manager.cancelTasks(task -> task.startsWith("host0/")));
+		assertEquals(List.of("host0/0", "host0/2"), manager.removedTasks);
+
+		manager.init();
+		assertTrue(manager.completedLatch.await(30, TimeUnit.SECONDS));
+		assertEquals(List.of("host1/1", "host2/3"), manager.completedTasks);
+	}
+
+	@ParameterizedTest
+	@ValueSource(booleans = { false, true })
+	void testSubmit(boolean eventDrivenScheduling) throws InterruptedException, ExecutionException, TimeoutException {
+		manager = new TestQueueManager(2, 1, 5);
+		manager.setEventDrivenScheduling(eventDrivenScheduling);
+		manager.setRetryBackoff(new RetryBackoff(10, 1000, 2, 0));
+		manager.init();
+		CompletableFuture<String> future = manager.submit("host0/0");
+		assertSame(future, manager.submit("host0/0"));
+		CompletableFuture<String> failedFuture = manager.submit("host1/fail");
+		CompletableFuture<String> retriedFuture = manager.submit("host2/retry");
+
+		assertEquals("host0/0", future.get(30, TimeUnit.SECONDS));
+		ExecutionException e = assertThrows(ExecutionException.class, () -> failedFuture.get(30, TimeUnit.SECONDS));
+		assertInstanceOf(IllegalStateException.class, e.getCause());
+		// Future is only completed after the last retry
+		assertEquals("host2/retry", retriedFuture.get(30, TimeUnit.SECONDS));
+		assertEquals(3, Collections.frequency(manager.completedTasks, "host2/retry"));
+	}
+
+	@Test
+	void testSubmitAll() throws InterruptedException, ExecutionException, TimeoutException {
+		manager = new TestQueueManager(2, 1, 4);
+		TaskBatch<String> batch = manager.submitAll(List.of("host0/0", "host1/1", "host0/2", "host2/3", "host3/4"));
+		assertEquals(5, batch.size());
+		assertEquals(1, manager.cancelTasks(task -> task.equals("host3/4")));
+		assertTrue(batch.futures().get(4).isCancelled());
+
+		manager.init();
+		assertEquals("host0/2", batch.futures().get(2).get(30, TimeUnit.SECONDS));
+		// The cancelled task fails the whole batch
+		ExecutionException e = assertThrows(ExecutionException.class, () -> batch.allCompleted().get(30, TimeUnit.SECONDS));
+		assertInstanceOf(CancellationException.class, e.getCause());
+
+		TaskBatch<String> secondBatch = manager.submitAll(List.of("host0/5", "host1/6"));
+		assertEquals(List.of("host0/5", "host1/6"), secondBatch.allCompleted().get(30, TimeUnit.SECONDS));
+	}
+
+	@Test
+	void testSubmitRejected() {
+		manager = new TestQueueManager(1, 1, 0);
+		manager.setQueueCapacity(1);
+		assertFalse(manager.submit("host0/0").isDone());
+		CompletableFuture<String> rejectedFuture = manager.submit("host0/1");
+		ExecutionException e = assertThrows(ExecutionException.class, rejectedFuture::get);
+		assertInstanceOf(RejectedExecutionException.class, e.getCause());
+	}
+
+	@ParameterizedTest
+	@ValueSource(booleans = { false, true })
+	void testTaskDependencies(boolean eventDrivenScheduling) throws InterruptedException {
+		manager = new TestQueueManager(4, 2, 5);
+		manager.setEventDrivenScheduling(eventDrivenScheduling);
+		manager.addTaskToQueue("host0/page");
+		manager.addTaskToQueue("host0/links", List.of("host0/page"));
+		manager.addTaskToQueue("host1/image0", List.of("host0/links"));
+		manager.addTaskToQueue("host1/image1", List.of("host0/links"));
+		manager.addTaskToQueue("host0/metadata", List.of("host1/image0", "host1/image1"));
+		assertEquals(1, manager.getQueueSize());
+		assertEquals(4, manager.getWaitingTaskCount());
+
+		manager.init();
+		assertTrue(manager.completedLatch.await(30, TimeUnit.SECONDS));
+		assertEquals(List.of("host0/page", "host0/links"), manager.completedTasks.subList(0, 2));
+		assertEquals(Set.of("host1/image0", "host1/image1"), new HashSet<>(manager.completedTasks.subList(2, 4)));
+		assertEquals("host0/metadata", manager.completedTasks.get(4));
+		assertEquals(0, manager.getWaitingTaskCount());
+	}
+
+	@Test
+	void testDependentTasksAreRemovedIfPrerequisiteFails() throws InterruptedException, TimeoutException {
+		manager = new TestQueueManager(2, 1, 2);
+		manager.addTaskToQueue("host0/fail");
+		manager.addTaskToQueue("host1/0");
+		manager.addTaskToQueue("host1/1", List.of("host0/fail", "host1/0"));
+		CompletableFuture<String> future = manager.submit("host2/2", List.of("host1/1"));
+		manager.init();
+		assertTrue(manager.completedLatch.await(30, TimeUnit.SECONDS));
+
+		assertThrows(CancellationException.class, () -> future.get(30, TimeUnit.SECONDS));
+		assertEquals(Set.of("host1/1", "host2/2"), new HashSet<>(manager.removedTasks));
+		assertEquals(Set.of("host0/fail", "host1/0"), new HashSet<>(manager.completedTasks));
+		assertEquals(0, manager.getWaitingTaskCount());
+	}
+
+	@Test
+	void testTaskWaitsForExecutingPrerequisite() throws InterruptedException {
+		manager = new TestQueueManager(1, 1, 1);
+		manager.setExecutionTimeout(200);
+		manager.addTaskToQueue("host0/0/hang");
+		manager.init();
+		while (manager.getTaskCount() == 0) {
+			Thread.sleep(1);
+		}
+
+		assertEquals(List.of("host0/0/hang"), manager.getExecutingTaskCallables().stream().map(QueueTask::getTask).toList());
+
+		manager.addTaskToQueue("host1/1", List.of("host0/0/hang"));
+		assertEquals(1, manager.getWaitingTaskCount());
+		assertEquals(0, manager.getQueueSize());
+		assertTrue(manager.completedLatch.await(30, TimeUnit.SECONDS));
+		// Prerequisite was cancelled by the watchdog, so the dependent task is removed
+		assertEquals(0, manager.getWaitingTaskCount());
+		assertEquals(List.of("host1/1"), manager.removedTasks);
+	}
+
+	@Test
+	void testCancelPrerequisite() {
+		manager = new TestQueueManager(1, 1, 0);
+		manager.addTaskToQueue("host0/0");
+		manager.addTaskToQueue("host1/1", List.of("host0/0"));
+		manager.addTaskToQueue("host2/2", List.of("host1/1"));
+		assertEquals(3, manager.cancelTasksForRestrictionKey("host0"));
+		assertEquals(List.of("host0/0", "host1/1", "host2/2"), manager.removedTasks);
+		assertEquals(0, manager.getWaitingTaskCount());
+	}
+
+	@Test
+	void testQueueCapacity() throws InterruptedException {
+		manager = new TestQueueManager(1, 1, 4);
+		manager.setQueueCapacity(2);
+		manager.addTasksToQueue(List.of("host0/0", "host0/1", "host0/2"));
+		assertEquals(2, manager.getQueueSize());
+		assertEquals(List.of("host0/2"), manager.rejectedTasks);
+		assertFalse(manager.offerTask("host0/2", 10, TimeUnit.MILLISECONDS));
+
+		Thread producer = new Thread(() -> {
+			try {
+				manager.putTask("host0/2");
+				manager.putTask("host0/3");
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		});
+		producer.start();
+		manager.init();
+		producer.join(30000);
+		assertFalse(producer.isAlive());
+		assertTrue(manager.completedLatch.await(30, TimeUnit.SECONDS));
+		assertEquals(List.of("host0/0", "host0/1", "host0/2", "host0/3"), manager.completedTasks);
+	}
+
+	@Test
+	void testQueueIsRestoredFromJournal(@TempDir Path tempDir) throws InterruptedException {
+		Path journalFile = tempDir.resolve("queue.journal");
+		List<String> tasks = List.of("slow/0", "slow/1", "slow/2", "slow/3", "slow/4");
+		manager = new TestQueueManager(1, 1, 1);
+		manager.setJournal(new QueueJournal<>(journalFile, new StringSerializer()));
+		manager.init();
+		manager.addTasksToQueue(tasks);
+		assertTrue(manager.completedLatch.await(30, TimeUnit.SECONDS));
+		manager.stop();
+		List<String> completedBeforeStop = new ArrayList<>(manager.completedTasks);
+
+		manager = new TestQueueManager(1, 1, tasks.size() - completedBeforeStop.size());
+		manager.setJournal(new QueueJournal<>(journalFile, new StringSerializer()));
+		manager.init();
+		assertTrue(manager.completedLatch.await(30, TimeUnit.SECONDS));
+		assertFalse(manager.completedTasks.contains("slow/0"));
+		Set<String> allCompletedTasks = new HashSet<>(completedBeforeStop);
+		allCompletedTasks.addAll(manager.completedTasks);
+		assertEquals(new HashSet<>(tasks), allCompletedTasks);
+	}
+
+	@Test
+	void testTasksAreSharedByProcessesWithQueueStore(@TempDir Path tempDir) throws InterruptedException {
+		ApplicationProperties.setProperty(ApplicationMain.DATABASE_PATH, tempDir.toString());
+		String databaseFile = tempDir.resolve("queue.sqlite").toString();
+		int taskCount = 20;
+		manager = new TestQueueManager(2, 1, taskCount);
+		SQLiteQueueStore<String> store = new SQLiteQueueStore<>(databaseFile, "queue", new StringSerializer());
+		QueueStoreWorker<String, String> worker = new QueueStoreWorker<>(manager, store);
+		for (int i = 0; i < taskCount; i++) {
+			assertTrue(worker.addTask("host" + (i % 3) + "/" + i));
+		}
+
+		// Second queue manager simulates another process
+		TestQueueManager otherManager = new TestQueueManager(2, 1, taskCount);
+		QueueStoreWorker<String, String> otherWorker = new QueueStoreWorker<>(otherManager, new SQLiteQueueStore<>(databaseFile, "queue", new StringSerializer()));
+		for (QueueStoreWorker<String, String> w : List.of(worker, otherWorker)) {
+			w.setPollInterval(10);
+		}
+		manager.init();
+		otherManager.init();
+		worker.start();
+		otherWorker.start();
+		try {
+			long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(30);
+			while (store.getTaskCount() > 0 && System.nanoTime() < deadline) {
+				Thread.sleep(10);
+			}
+		} finally {
+			worker.stop();
+			otherWorker.stop();
+			otherManager.stop();
+		}
+
+		List<String> allCompletedTasks = new ArrayList<>(manager.completedTasks);
+		allCompletedTasks.addAll(otherManager.completedTasks);
+		assertEquals(taskCount, allCompletedTasks.size());
+		assertEquals(taskCount, new HashSet<>(allCompletedTasks).size());
+		assertFalse(manager.completedTasks.isEmpty());
+		assertFalse(otherManager.completedTasks.isEmpty());
+		assertEquals(0, store.getTaskCount());
+	}
+
+	private static class StringSerializer implements QueueTaskSerializer<String> {
+		@Override
+		public String getTaskId(String task) {
+			return task;
+		}
+
+		@Override
+		public byte[] serialize(String task) throws IOException {
+			return task.getBytes(StandardCharsets.UTF_8);
+		}
+
+		@Override
+		public String deserialize(byte[] data) throws IOException {
+			return new String(data, StandardCharsets.UTF_8);
+		}
+	}
+
+	private static class TestQueueManager extends QueueManagerBase<String, String> {
+		private final List<String> completedTasks = Collections.synchronizedList(new ArrayList<>());
+
+		private final CountDownLatch completedLatch;
+
+		private final AtomicInteger runningTotal = new AtomicInteger();
+
+		private final AtomicInteger maxRunningTotal = new AtomicInteger();
+
+		private final Map<String, AtomicInteger> runningPerHost = new ConcurrentHashMap<>();
+
+		private final Map<String, AtomicInteger> maxRunningPerHost = new ConcurrentHashMap<>();
+
+		private final Map<String, Long> startTimes = new ConcurrentHashMap<>();
+
+		private final List<String> rejectedTasks = Collections.synchronizedList(new ArrayList<>());
+
+		private final List<String> removedTasks = Collections.synchronizedList(new ArrayList<>());
+
+		private final List<String> timedOutTasks = Collections.synchronizedList(new ArrayList<>());
+
+		public TestQueueManager(int maxConnectionCount, int maxConnectionCountPerHost, int expectedTaskCount) {
+			this(new TestQueueTaskFactory(), maxConnectionCount, maxConnectionCountPerHost, expectedTaskCount);
+		}
+
+		private TestQueueManager(TestQueueTaskFactory queueTaskFactory, int maxConnectionCount, int maxConnectionCountPerHost, int expectedTaskCount) {
+			super(queueTaskFactory, maxConnectionCount, maxConnectionCountPerHost);
+			this.completedLatch = new CountDownLatch(expectedTaskCount);
+			queueTaskFactory.manager = this;
+		}
+
+		@Override
+		protected void removedTaskFromQueue(String task, boolean executeFailure) {
+			removedTasks.add(task);
+		}
+
+		@Override
+		protected void rejectedTask(String task) {
+			rejectedTasks.add(task);
+		}
+
+		@Override
+		protected void completedTaskCallable(QueueTask<String, String> task) {
+			completedTasks.add(task.getTask());
+			if (isTaskTimedOut(task)) {
+				timedOutTasks.add(task.getTask());
+			}
+			if (task.getTask().endsWith("/retry") && getRetryAttempts(task.getTask()) < 2) {
+				retryTask(task.getTask());
+			}
+			completedLatch.countDown();
+		}
+
+		@Override
+		protected long getEstimatedSizeForTask(String task) {
+			return 10;
+		}
+
+		@Override
+		protected int getPriorityForTask(String task) {
+			return task.endsWith("/urgent") ? 10 : super.getPriorityForTask(task);
+		}
+
+		@Override
+		protected Restriction getRestrictionForTask(String task) {
+			String host = getHost(task);
+			return new RestrictionBase(host, 0, host.equals("limited") ? 1000000 : 0) {
+				{
+					if (host.equals("slow")) {
+						setMinRequestInterval(100);
+					}
+					if (host.startsWith("cdn")) {
+						setParentRestriction(new RestrictionBase("site", 3) {
+						});
+					}
+				}
+			};
+		}
+
+		private void taskStarted(String task) {
+			startTimes.put(task, System.nanoTime());
+			updateMax(maxRunningTotal, runningTotal.incrementAndGet());
+			String host = getHost(task);
+			int running = runningPerHost.computeIfAbsent(host, k -> new AtomicInteger()).incrementAndGet();
+			updateMax(maxRunningPerHost.computeIfAbsent(host, k -> new AtomicInteger()), running);
+		}
+
+		private void taskFinished(String task) {
+			runningPerHost.get(getHost(task)).decrementAndGet();
+			runningTotal.decrementAndGet();
+		}
+
+		private static void updateMax(AtomicInteger max, int value) {
+			max.accumulateAndGet(value, Math::max);
+		}
+
+		private static String getHost(String task) {
+			return task.substring(0, task.indexOf('/'));
+		}
+	}
+
+	private static class TestQueueTaskFactory implements QueueTaskFactory<String, String> {
+		private TestQueueManager manager;
+
+		@Override
+		public QueueTask<String, String> createTaskCallable(String task) {
+			return new QueueTaskBase<>(task) {
+				@Override
+				public String call() throws Exception {
+					manager.taskStarted(task);
+					try {
+						if (task.startsWith("limited/")) {
+							try (InputStream in = manager.createThrottledInputStream(task, new ByteArrayInputStream(new byte[1000]))) {
+								in.readAllBytes();
+							}
+						}
+						Thread.sleep(task.endsWith("/hang") ? 10000 : 1);
+						if (task.contains("/fail")) {
+							throw new IllegalStateException("Task failed: " + task);
+						}
+						return task;
+					} finally {
+						manager.taskFinished(task);
+					}
+				}
+			};
+		}
+	}
+}
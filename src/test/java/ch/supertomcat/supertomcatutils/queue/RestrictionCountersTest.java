@@ -0,0 +1,52 @@
+package ch.supertomcat.supertomcatutils.queue;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+class RestrictionCountersTest {
+	@Test
+	void testCountersAreRemovedWhenZero() {
+		RestrictionCounters counters = new RestrictionCounters();
+		assertEquals(0, counters.get("host0"));
+		assertEquals(1, counters.increment("host0"));
+		assertEquals(2, counters.increment("host0"));
+		assertEquals(1, counters.increment("host1"));
+		assertEquals(Map.of("host0", 2, "host1", 1), counters.getCounts());
+
+		assertEquals(1, counters.decrement("host0"));
+		assertEquals(0, counters.decrement("host1"));
+		assertEquals(1, counters.size());
+		assertEquals(0, counters.decrement("host0"));
+		assertEquals(0, counters.size());
+
+		// Count never gets negative
+		assertEquals(0, counters.decrement("host0"));
+		assertEquals(0, counters.get("host0"));
+	}
+
+	@Test
+	void testConcurrentIncrementAndDecrement() throws InterruptedException {
+		RestrictionCounters counters = new RestrictionCounters();
+		List<Thread> threads = new ArrayList<>();
+		for (int i = 0; i < 4; i++) {
+			Thread thread = new Thread(() -> {
+				for (int x = 0; x < 10000; x++) {
+					String restrictionKey = "host" + (x % 10);
+					counters.increment(restrictionKey);
+					counters.decrement(restrictionKey);
+				}
+			});
+			threads.add(thread);
+			thread.start();
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		assertEquals(0, counters.size());
+	}
+}
@@ -0,0 +1,58 @@
+package ch.supertomcat.supertomcatutils.queue;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+class RestrictionQueueTest {
+	@ParameterizedTest
+	@ValueSource(booleans = { false, true })
+	void testRemovedTasksAreNotExecutedAfterSchedulingModeChange(boolean removeIf) {
+		RestrictionQueue<String> queue = new RestrictionQueue<>();
+		queue.setSchedulingMode(QueueSchedulingMode.FAIR);
+		queue.add("a", "a1");
+		queue.add("a", "a2");
+		queue.add("b", "b1");
+		if (removeIf) {
+			assertEquals(List.of("a1", "a2"), queue.removeIf(task -> task.startsWith("a")));
+		} else {
+			assertEquals(List.of("a1", "a2"), queue.remove("a"));
+		}
+
+		queue.setSchedulingMode(QueueSchedulingMode.ORDERED);
+		assertEquals(List.of("b1"), pollAllTasks(queue));
+		assertEquals(0, queue.size());
+	}
+
+	@Test
+	void testNewBucketIsKeptAfterSchedulingModeChange() {
+		RestrictionQueue<String> queue = new RestrictionQueue<>();
+		queue.setSchedulingMode(QueueSchedulingMode.FAIR);
+		queue.add("a", "a1");
+		queue.add("a", "a2");
+		queue.add("b", "b1");
+		queue.remove("a");
+		// New bucket for the same restriction key, while the removed bucket is still contained in the ring
+		queue.add("a", "a3");
+
+		queue.setSchedulingMode(QueueSchedulingMode.ORDERED);
+		assertEquals(List.of("b1", "a3"), pollAllTasks(queue));
+		assertEquals(0, queue.size());
+	}
+
+	private static List<String> pollAllTasks(RestrictionQueue<String> queue) {
+		List<String> tasks = new ArrayList<>();
+		RestrictionQueue.Bucket<String> bucket;
+		while ((bucket = queue.pollReadyBucket()) != null) {
+			tasks.add(queue.pollTask(bucket));
+		}
+		assertNull(queue.pollReadyBucket());
+		return tasks;
+	}
+}
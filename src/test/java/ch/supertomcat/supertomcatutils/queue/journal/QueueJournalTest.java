@@ -0,0 +1,98 @@
+package ch.supertomcat.supertomcatutils.queue.journal;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class QueueJournalTest {
+	@TempDir
+	private Path tempDir;
+
+	@Test
+	void testLiveTasksAreRestored() throws IOException, InterruptedException {
+		Path file = tempDir.resolve("queue.journal");
+		QueueJournal<String> journal = new QueueJournal<>(file, new StringSerializer());
+		assertEquals(List.of(), journal.open());
+		journal.taskAdded("a");
+		journal.taskAdded("b");
+		journal.taskAdded("c");
+		journal.taskAdded("d");
+		journal.taskStarted("a");
+		journal.taskCompleted("a");
+		journal.taskStarted("b");
+		journal.taskCancelled("c");
+		journal.flush();
+		journal.close();
+
+		journal = new QueueJournal<>(file, new StringSerializer());
+		assertEquals(List.of("b", "d"), journal.open());
+		journal.close();
+	}
+
+	@Test
+	void testIncompleteRecordIsIgnored() throws IOException, InterruptedException {
+		Path file = tempDir.resolve("queue.journal");
+		QueueJournal<String> journal = new QueueJournal<>(file, new StringSerializer());
+		journal.open();
+		journal.taskAdded("a");
+		journal.taskAdded("b");
+		journal.close();
+
+		// Simulate a crash while a record was written
+		long size = Files.size(file);
+		Files.write(file, new byte[] { 0, 0, 0, 20, 1, 2 }, StandardOpenOption.APPEND);
+		assertEquals(size + 6, Files.size(file));
+
+		journal = new QueueJournal<>(file, new StringSerializer());
+		assertEquals(List.of("a", "b"), journal.open());
+		journal.close();
+		assertEquals(size, Files.size(file));
+	}
+
+	@Test
+	void testJournalIsCompacted() throws IOException, InterruptedException {
+		Path file = tempDir.resolve("queue.journal");
+		QueueJournal<String> journal = new QueueJournal<>(file, new StringSerializer());
+		journal.setCommitInterval(0);
+		journal.setCompactionMinRecords(100);
+		journal.open();
+		for (int i = 0; i < 1000; i++) {
+			journal.taskAdded("task" + i);
+			journal.taskCompleted("task" + i);
+			journal.flush();
+		}
+		journal.taskAdded("last");
+		journal.flush();
+		assertEquals(true, Files.size(file) < 2000);
+		journal.close();
+
+		journal = new QueueJournal<>(file, new StringSerializer());
+		assertEquals(List.of("last"), journal.open());
+		journal.close();
+	}
+
+	private static class StringSerializer implements QueueTaskSerializer<String> {
+		@Override
+		public String getTaskId(String task) {
+			return task;
+		}
+
+		@Override
+		public byte[] serialize(String task) throws IOException {
+			return task.getBytes(StandardCharsets.UTF_8);
+		}
+
+		@Override
+		public String deserialize(byte[] data) throws IOException {
+			return new String(data, StandardCharsets.UTF_8);
+		}
+	}
+}
@@ -0,0 +1,35 @@
+package ch.supertomcat.supertomcatutils.queue.metrics;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+class LatencyHistogramTest {
+	@Test
+	void testBucketsCoverAllValues() {
+		long[] values = { 0, 1, 15, 16, 17, 31, 32, 33, 1000, 123456789, Long.MAX_VALUE };
+		for (long value : values) {
+			long highestValue = LatencyHistogram.getBucketHighestValue(LatencyHistogram.getBucketIndex(value));
+			assertTrue(highestValue >= value);
+			assertTrue(highestValue - value <= value / 16);
+		}
+	}
+
+	@Test
+	void testPercentiles() {
+		LatencyHistogram histogram = new LatencyHistogram();
+		for (int i = 1; i <= 1000; i++) {
+			histogram.record(i * 1000L);
+		}
+		LatencyHistogramSnapshot snapshot = histogram.getSnapshot();
+		assertEquals(1000, snapshot.count());
+		assertEquals(500500, snapshot.mean());
+		assertEquals(1000000, snapshot.max());
+		assertTrue(Math.abs(snapshot.p50() - 500000) <= 500000 / 16);
+		assertTrue(Math.abs(snapshot.p99() - 990000) <= 990000 / 16);
+
+		histogram.reset();
+		assertEquals(0, histogram.getSnapshot().count());
+	}
+}
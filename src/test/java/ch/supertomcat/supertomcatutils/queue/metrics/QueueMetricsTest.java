@@ -0,0 +1,56 @@
+package ch.supertomcat.supertomcatutils.queue.metrics;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+
+class QueueMetricsTest {
+	@Test
+	void testRestrictionMetricsAreDisabledByDefault() {
+		QueueMetrics metrics = new QueueMetrics();
+		metrics.taskScheduled("host0", 1000);
+		metrics.taskCompleted("host0", Future.State.SUCCESS, 1000);
+		assertEquals(1, metrics.getSnapshot().executionTime().count());
+		assertEquals(0, metrics.getRestrictionKeys().length);
+	}
+
+	@Test
+	void testRestrictionMetricsAreEvicted() {
+		TestQueueMetrics metrics = new TestQueueMetrics();
+		metrics.setRestrictionMetricsEnabled(true);
+		metrics.setMaxRestrictionKeyCount(2);
+		metrics.time = 0;
+		metrics.taskCompleted("host0", Future.State.SUCCESS, 1000);
+		metrics.time = 1;
+		metrics.taskCompleted("host1", Future.State.SUCCESS, 1000);
+		metrics.time = 2;
+		metrics.taskCompleted("host0", Future.State.SUCCESS, 1000);
+
+		// Least recently used restriction key is removed
+		metrics.time = 3;
+		metrics.taskCompleted("host2", Future.State.SUCCESS, 1000);
+		assertArrayEquals(new String[] { "host0", "host2" }, metrics.getRestrictionKeys());
+		assertEquals(2, metrics.getSnapshot().restrictions().get("host0").executionTime().count());
+
+		// Idle restriction keys are removed
+		metrics.time = TimeUnit.MINUTES.toNanos(11);
+		metrics.taskCompleted("host3", Future.State.SUCCESS, 1000);
+		assertArrayEquals(new String[] { "host3" }, metrics.getRestrictionKeys());
+
+		metrics.setRestrictionMetricsEnabled(false);
+		assertEquals(0, metrics.getRestrictionKeys().length);
+	}
+
+	private static class TestQueueMetrics extends QueueMetrics {
+		private long time = 0;
+
+		@Override
+		protected long currentTime() {
+			return time;
+		}
+	}
+}
@@ -0,0 +1,38 @@
+package ch.supertomcat.supertomcatutils.queue.metrics;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.Set;
+
+import org.junit.jupiter.api.Test;
+
+class SessionStatisticsTest {
+	@Test
+	void testLeastRecentlyUsedRestrictionKeysAreRemoved() {
+		TestSessionStatistics statistics = new TestSessionStatistics();
+		statistics.setMaxRestrictionKeyCount(2);
+		statistics.time = 0;
+		statistics.increaseBytes("host0", 100);
+		statistics.time = 1;
+		statistics.increaseBytes("host1", 200);
+		statistics.time = 2;
+		statistics.increaseFiles("host0");
+
+		statistics.time = 3;
+		statistics.increaseBytes("host2", 300);
+		assertEquals(Set.of("host0", "host2"), statistics.getBytesByRestrictionKey().keySet());
+		assertEquals(1, statistics.getFiles("host0"));
+		assertEquals(0, statistics.getBytes("host1"));
+		// Totals are not affected
+		assertEquals(600, statistics.getBytes());
+	}
+
+	private static class TestSessionStatistics extends SessionStatistics {
+		private long time = 0;
+
+		@Override
+		protected long currentTime() {
+			return time;
+		}
+	}
+}
@@ -0,0 +1,43 @@
+package ch.supertomcat.supertomcatutils.queue.metrics;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import org.junit.jupiter.api.Test;
+
+class ThroughputWindowTest {
+	@Test
+	void testRollingWindow() {
+		TestThroughputWindow window = new TestThroughputWindow(10);
+		for (int i = 0; i < 10; i++) {
+			window.second = i;
+			window.add(100);
+			window.add(100);
+		}
+		// The current second is not complete, so it is not included
+		assertEquals(200, window.getPerSecond(1));
+		assertEquals(180, window.getPerSecond(10));
+
+		window.second = 10;
+		assertEquals(200, window.getPerSecond(10));
+
+		// Slots of seconds outside of the window are reused
+		window.second = 25;
+		window.add(1000);
+		window.second = 26;
+		assertEquals(1000, window.getPerSecond(1));
+		assertEquals(100, window.getPerSecond(10));
+	}
+
+	private static class TestThroughputWindow extends ThroughputWindow {
+		private long second = 0;
+
+		public TestThroughputWindow(int length) {
+			super(length);
+		}
+
+		@Override
+		protected long currentSecond() {
+			return second;
+		}
+	}
+}
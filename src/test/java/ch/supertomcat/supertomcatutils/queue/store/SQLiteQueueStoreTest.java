@@ -0,0 +1,165 @@
+package ch.supertomcat.supertomcatutils.queue.store;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import ch.supertomcat.supertomcatutils.application.ApplicationMain;
+import ch.supertomcat.supertomcatutils.application.ApplicationProperties;
+import ch.supertomcat.supertomcatutils.queue.journal.QueueTaskSerializer;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+
+class SQLiteQueueStoreTest {
+	@TempDir
+	private Path tempDir;
+
+	private String databaseFile;
+
+	@BeforeEach
+	void setDatabasePath() {
+		ApplicationProperties.setProperty(ApplicationMain.DATABASE_PATH, tempDir.toString());
+		databaseFile = tempDir.resolve("queue.sqlite").toString();
+	}
+
+	@Test
+	void testTasksAreClaimedOnlyOnce() {
+		SQLiteQueueStore<String> store = new SQLiteQueueStore<>(databaseFile, "queue", new StringSerializer());
+		// Second instance simulates another process
+		SQLiteQueueStore<String> otherStore = new SQLiteQueueStore<>(databaseFile, "queue", new StringSerializer());
+		assertTrue(store.addTask("host0/0", "host0", 0, 0));
+		assertTrue(store.addTask("host0/1", "host0", 0, 0));
+		assertTrue(store.addTask("host0/2", "host0", 0, 5));
+		assertFalse(otherStore.addTask("host0/0", "host0", 0, 0));
+
+		assertEquals(List.of("host0/2", "host0/0"), getTasks(store.claimTasks("a", 2, 60000)));
+		assertEquals(List.of("host0/1"), getTasks(otherStore.claimTasks("b", 2, 60000)));
+		assertEquals(List.of(), getTasks(store.claimTasks("a", 2, 60000)));
+
+		assertFalse(otherStore.completeTask("b", "host0/0"));
+		assertTrue(store.completeTask("a", "host0/0"));
+		assertTrue(otherStore.releaseTask("b", "host0/1"));
+		assertEquals(2, store.getTaskCount());
+		assertEquals(List.of("host0/1"), getTasks(store.claimTasks("a", 2, 60000)));
+	}
+
+	@Test
+	void testMaxConnectionCountIsSharedByProcesses() {
+		SQLiteQueueStore<String> store = new SQLiteQueueStore<>(databaseFile, "queue", new StringSerializer());
+		SQLiteQueueStore<String> otherStore = new SQLiteQueueStore<>(databaseFile, "queue", new StringSerializer());
+		for (int i = 0; i < 4; i++) {
+			store.addTask("host0/" + i, "host0", 2, 0);
+		}
+		store.addTask("host1/4", "host1", 2, 0);
+
+		assertEquals(List.of("host0/0"), getTasks(store.claimTasks("a", 1, 60000)));
+		assertEquals(List.of("host0/1", "host1/4"), getTasks(otherStore.claimTasks("b", 5, 60000)));
+		assertEquals(2, store.getClaimedCount("host0"));
+
+		otherStore.completeTask("b", "host0/1");
+		assertEquals(1, store.getClaimedCount("host0"));
+		assertEquals(List.of("host0/2"), getTasks(store.claimTasks("a", 5, 60000)));
+
+		assertEquals(2, store.releaseTasks("a"));
+		assertEquals(0, store.getClaimedCount("host0"));
+		assertEquals(1, store.getClaimedCount("host1"));
+	}
+
+	@Test
+	void testTasksOfSaturatedRestrictionKeysDoNotUseUpTheClaim() {
+		SQLiteQueueStore<String> store = new SQLiteQueueStore<>(databaseFile, "queue", new StringSerializer());
+		for (int i = 0; i < 3; i++) {
+			store.addTask("host0/" + i, "host0", 1, 5);
+		}
+		store.addTask("host1/3", "host1", 1, 0);
+
+		assertEquals(List.of("host0/0"), getTasks(store.claimTasks("a", 1, 60000)));
+		// Higher prioritized tasks of host0 can't be claimed, so they must not take the place of the task of host1
+		assertEquals(List.of("host1/3"), getTasks(store.claimTasks("b", 1, 60000)));
+		assertEquals(List.of(), getTasks(store.claimTasks("b", 1, 60000)));
+	}
+
+	@Test
+	void testTasksOfNearlyFullRestrictionKeysDoNotUseUpTheClaim() {
+		SQLiteQueueStore<String> store = new SQLiteQueueStore<>(databaseFile, "queue", new StringSerializer());
+		for (int i = 0; i < 5; i++) {
+			store.addTask("host0/" + i, "host0", 2, 5);
+		}
+		for (int i = 5; i < 8; i++) {
+			store.addTask("host1/" + i, "host1", 0, 0);
+		}
+
+		assertEquals(List.of("host0/0"), getTasks(store.claimTasks("a", 1, 60000)));
+		// host0 has only one free slot left, so the claim is filled up with tasks of host1
+		assertEquals(List.of("host0/1", "host1/5", "host1/6"), getTasks(store.claimTasks("b", 3, 60000)));
+		assertEquals(2, store.getClaimedCount("host0"));
+	}
+
+	@Test
+	void testExpiredLeasesAreClaimedAgain() throws InterruptedException {
+		SQLiteQueueStore<String> store = new SQLiteQueueStore<>(databaseFile, "queue", new StringSerializer());
+		store.addTask("host0/0", "host0", 1, 0);
+		store.addTask("host0/1", "host0", 1, 0);
+		assertEquals(List.of("host0/0"), getTasks(store.claimTasks("a", 2, 50)));
+		Thread.sleep(100);
+
+		// Process a died, so its lease expired and the counter was decremented
+		List<StoredTask<String>> claimedTasks = store.claimTasks("b", 2, 60000);
+		assertEquals(List.of("host0/0"), getTasks(claimedTasks));
+		assertEquals(2, claimedTasks.get(0).claimCount());
+		assertEquals(1, store.getClaimedCount("host0"));
+		assertFalse(store.completeTask("a", "host0/0"));
+		assertEquals(1, store.renewLeases("b", 60000));
+	}
+
+	@Test
+	void testStatementsAreRecorded() throws IOException {
+		SQLiteQueueStore<String> store = new SQLiteQueueStore<>(databaseFile, "queue", new StringSerializer());
+		Path recordingFile = tempDir.resolve("recording.jfr");
+		try (Recording recording = new Recording()) {
+			recording.enable("ch.supertomcat.supertomcatutils.database.SQLiteDBOperation");
+			recording.start();
+			store.addTask("host0/0", "host0", 1, 0);
+			store.claimTasks("a", 1, 60000);
+			recording.stop();
+			recording.dump(recordingFile);
+		}
+
+		List<RecordedEvent> events = RecordingFile.readAllEvents(recordingFile);
+		Set<String> operations = events.stream().map(e -> e.getString("operation")).collect(Collectors.toSet());
+		assertTrue(operations.containsAll(Set.of("Insert", "InsertTasks", "Claim", "SelectClaimableTasks", "ClaimTasks", "UpdateClaimedCounts")), operations::toString);
+	}
+
+	private static List<String> getTasks(List<StoredTask<String>> storedTasks) {
+		return storedTasks.stream().map(StoredTask::task).toList();
+	}
+
+	private static class StringSerializer implements QueueTaskSerializer<String> {
+		@Override
+		public String getTaskId(String task) {
+			return task;
+		}
+
+		@Override
+		public byte[] serialize(String task) throws IOException {
+			return task.getBytes(StandardCharsets.UTF_8);
+		}
+
+		@Override
+		public String deserialize(byte[] data) throws IOException {
+			return new String(data, StandardCharsets.UTF_8);
+		}
+	}
+}